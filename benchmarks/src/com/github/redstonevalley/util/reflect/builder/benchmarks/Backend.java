@@ -0,0 +1,61 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import org.objenesis.ObjenesisStd;
+
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ConstructingBuilder;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+import com.github.redstonevalley.util.reflect.builder.generated.GeneratedBuilder;
+import com.github.redstonevalley.util.reflect.builder.invoke.VarHandleBuilder;
+import com.github.redstonevalley.util.reflect.builder.objenesis.ObjenesisBuilder;
+import com.github.redstonevalley.util.reflect.builder.sun.android.AndroidSunMiscUnsafeBuilder;
+import com.github.redstonevalley.util.reflect.builder.sun.oracle.OracleSunMiscUnsafeBuilder;
+
+/**
+ * The builder implementations that the benchmarks compare.
+ *
+ * @author cryoc
+ */
+public enum Backend {
+  CONSTRUCTING {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+        throws ReflectiveOperationException {
+      return new ConstructingBuilder<>(clazz, clazz.getConstructor(), policy);
+    }
+  },
+  GENERATED {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+        throws ReflectiveOperationException {
+      return new GeneratedBuilder<>(clazz, clazz.getConstructor(), policy);
+    }
+  },
+  OBJENESIS {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+      return new ObjenesisBuilder<>(clazz, new ObjenesisStd().getInstantiatorOf(clazz), policy);
+    }
+  },
+  ORACLE_UNSAFE {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+      return new OracleSunMiscUnsafeBuilder<>(clazz, policy);
+    }
+  },
+  ANDROID_UNSAFE {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+      return new AndroidSunMiscUnsafeBuilder<>(clazz, policy);
+    }
+  },
+  VAR_HANDLE {
+    @Override
+    <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+      return new VarHandleBuilder<>(clazz, policy);
+    }
+  };
+
+  abstract <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+      throws ReflectiveOperationException;
+}
@@ -0,0 +1,91 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+
+/**
+ * Single-threaded cost of each builder operation, for every {@link Backend} and {@link Shape}. Each
+ * thread has its own builder, so the builder's lock is never contended.
+ * {@link HandWrittenBenchmark} is the baseline that the others should be compared with.
+ *
+ * @author cryoc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class BuilderBenchmark {
+
+  @Param
+  public Shape shape;
+
+  @Param
+  public Backend backend;
+
+  private ReflectiveBuilder<Object> builder;
+  private Object sample;
+  private Field[] fields;
+  private Object[] values;
+
+  @SuppressWarnings("unchecked")
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    builder = (ReflectiveBuilder<Object>) backend.create(shape.clazz, ConcurrencyPolicy.MONITOR);
+    sample = shape.sample();
+    fields = shape.fields();
+    values = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i].setAccessible(true);
+      values[i] = fields[i].get(sample);
+    }
+    builder.clone(sample);
+  }
+
+  /** Sets every field of the shape once. */
+  @Benchmark
+  public void setField() {
+    for (int i = 0; i < fields.length; i++) {
+      builder.setField(fields[i], values[i]);
+    }
+  }
+
+  /** Builds an instance with every field set. */
+  @Benchmark
+  public Object build() {
+    return builder.build();
+  }
+
+  @Benchmark
+  public void cloneObject() {
+    builder.clone(sample);
+  }
+
+  @Benchmark
+  public void cloneSharedFields() {
+    builder.cloneSharedFields(sample);
+  }
+
+  /** {@link #cloneObject()} followed by {@link #build()}: a full copy through the builder. */
+  @Benchmark
+  public Object cloneAndBuild() {
+    builder.clone(sample);
+    return builder.build();
+  }
+}
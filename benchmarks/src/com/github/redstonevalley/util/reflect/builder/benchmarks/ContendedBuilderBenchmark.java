@@ -0,0 +1,102 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+
+/**
+ * Multi-threaded cost of each builder operation when all threads share one builder, so that they
+ * contend for its lock. The {@code mixed} group has some threads building while others reconfigure
+ * the builder, as a builder shared between a writer and its readers would. Each
+ * {@link ConcurrencyPolicy} is measured.
+ *
+ * @author cryoc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class ContendedBuilderBenchmark {
+
+  @Param
+  public Shape shape;
+
+  @Param
+  public Backend backend;
+
+  /** Every policy that's safe for a builder shared between threads. */
+  @Param({"MONITOR", "COPY_ON_WRITE", "REENTRANT_LOCK", "STAMPED"})
+  public ConcurrencyPolicy policy;
+
+  private ReflectiveBuilder<Object> builder;
+  private Object sample;
+  private Field[] fields;
+  private Object[] values;
+
+  @SuppressWarnings("unchecked")
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    builder = (ReflectiveBuilder<Object>) backend.create(shape.clazz, policy);
+    sample = shape.sample();
+    fields = shape.fields();
+    values = new Object[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i].setAccessible(true);
+      values[i] = fields[i].get(sample);
+    }
+    builder.clone(sample);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object build() {
+    return builder.build();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void setField() {
+    for (int i = 0; i < fields.length; i++) {
+      builder.setField(fields[i], values[i]);
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void cloneObject() {
+    builder.clone(sample);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(3)
+  public Object mixedBuild() {
+    return builder.build();
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public void mixedClone() {
+    builder.clone(sample);
+  }
+}
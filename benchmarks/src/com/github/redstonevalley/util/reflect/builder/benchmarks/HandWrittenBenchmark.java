@@ -0,0 +1,45 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The baseline for {@link BuilderBenchmark#cloneAndBuild()}: the same copy of each {@link Shape},
+ * made by a constructor call and plain field assignments.
+ *
+ * @author cryoc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandWrittenBenchmark {
+
+  @Param
+  public Shape shape;
+
+  private Object sample;
+
+  @Setup
+  public void setUp() {
+    sample = shape.sample();
+  }
+
+  @Benchmark
+  public Object cloneAndBuild() {
+    return shape.buildByHand(sample);
+  }
+}
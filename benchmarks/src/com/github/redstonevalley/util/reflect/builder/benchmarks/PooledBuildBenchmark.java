@@ -0,0 +1,64 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.redstonevalley.util.reflect.builder.BuilderPool;
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+
+/**
+ * {@link BuilderBenchmark#build()} against a {@link BuilderPool} round trip, for the backends that
+ * can reuse instances. Run with {@code -prof gc} to compare the allocation rates.
+ *
+ * @author cryoc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+public class PooledBuildBenchmark {
+
+  @Param
+  public Shape shape;
+
+  @Param({"OBJENESIS", "ORACLE_UNSAFE", "ANDROID_UNSAFE", "VAR_HANDLE"})
+  public Backend backend;
+
+  private ReflectiveBuilder<Object> builder;
+  private BuilderPool<Object> pool;
+
+  @SuppressWarnings("unchecked")
+  @Setup
+  public void setUp() throws ReflectiveOperationException {
+    builder = (ReflectiveBuilder<Object>) backend.create(shape.clazz, ConcurrencyPolicy.MONITOR);
+    builder.clone(shape.sample());
+    pool = new BuilderPool<>(builder, 16);
+  }
+
+  @Benchmark
+  public Object build() {
+    return builder.build();
+  }
+
+  /** Acquires an instance and releases it straight away, as a message loop would. */
+  @Benchmark
+  public Object acquireAndRelease() {
+    Object built = pool.acquire();
+    pool.release(built);
+    return built;
+  }
+}
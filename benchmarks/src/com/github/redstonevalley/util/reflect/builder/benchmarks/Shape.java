@@ -0,0 +1,173 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+
+/**
+ * A class shape to benchmark, with a populated sample instance and a hand-written builder for it
+ * that serves as the baseline.
+ *
+ * @author cryoc
+ */
+public enum Shape {
+  FEW(Shapes.Few.class) {
+    @Override
+    Object sample() {
+      Shapes.Few sample = new Shapes.Few();
+      sample.id = 42;
+      sample.name = "few";
+      return sample;
+    }
+
+    @Override
+    Object buildByHand(Object source) {
+      Shapes.Few sample = (Shapes.Few) source;
+      Shapes.Few built = new Shapes.Few();
+      built.id = sample.id;
+      built.name = sample.name;
+      return built;
+    }
+  },
+  PRIMITIVE_HEAVY(Shapes.PrimitiveHeavy.class) {
+    @Override
+    Object sample() {
+      Shapes.PrimitiveHeavy sample = new Shapes.PrimitiveHeavy();
+      sample.flag = true;
+      sample.b1 = 1;
+      sample.b2 = -2;
+      sample.s1 = 300;
+      sample.s2 = -400;
+      sample.c1 = 'c';
+      sample.i1 = 5;
+      sample.i2 = -6;
+      sample.i3 = 70000;
+      sample.i4 = -80000;
+      sample.l1 = 1L << 40;
+      sample.l2 = -(1L << 41);
+      sample.f1 = 1.5f;
+      sample.f2 = -2.5f;
+      sample.d1 = Math.PI;
+      sample.d2 = -Math.E;
+      return sample;
+    }
+
+    @Override
+    Object buildByHand(Object source) {
+      Shapes.PrimitiveHeavy sample = (Shapes.PrimitiveHeavy) source;
+      Shapes.PrimitiveHeavy built = new Shapes.PrimitiveHeavy();
+      built.flag = sample.flag;
+      built.b1 = sample.b1;
+      built.b2 = sample.b2;
+      built.s1 = sample.s1;
+      built.s2 = sample.s2;
+      built.c1 = sample.c1;
+      built.i1 = sample.i1;
+      built.i2 = sample.i2;
+      built.i3 = sample.i3;
+      built.i4 = sample.i4;
+      built.l1 = sample.l1;
+      built.l2 = sample.l2;
+      built.f1 = sample.f1;
+      built.f2 = sample.f2;
+      built.d1 = sample.d1;
+      built.d2 = sample.d2;
+      return built;
+    }
+  },
+  REFERENCE_HEAVY(Shapes.ReferenceHeavy.class) {
+    @Override
+    Object sample() {
+      Shapes.ReferenceHeavy sample = new Shapes.ReferenceHeavy();
+      sample.r1 = "one";
+      sample.r2 = "two";
+      sample.r3 = "three";
+      sample.r4 = "four";
+      sample.r5 = new Object();
+      sample.r6 = "six";
+      sample.r7 = 7;
+      sample.r8 = 8L;
+      sample.r9 = 9;
+      sample.r10 = 10;
+      sample.r11 = 11L;
+      sample.r12 = 12L;
+      return sample;
+    }
+
+    @Override
+    Object buildByHand(Object source) {
+      Shapes.ReferenceHeavy sample = (Shapes.ReferenceHeavy) source;
+      Shapes.ReferenceHeavy built = new Shapes.ReferenceHeavy();
+      built.r1 = sample.r1;
+      built.r2 = sample.r2;
+      built.r3 = sample.r3;
+      built.r4 = sample.r4;
+      built.r5 = sample.r5;
+      built.r6 = sample.r6;
+      built.r7 = sample.r7;
+      built.r8 = sample.r8;
+      built.r9 = sample.r9;
+      built.r10 = sample.r10;
+      built.r11 = sample.r11;
+      built.r12 = sample.r12;
+      return built;
+    }
+  },
+  DEEP(Shapes.Level5.class) {
+    @Override
+    Object sample() {
+      Shapes.Level5 sample = new Shapes.Level5();
+      sample.a1 = 1;
+      sample.b1 = "b1";
+      sample.a2 = 2;
+      sample.b2 = "b2";
+      sample.a3 = 3;
+      sample.b3 = "b3";
+      sample.a4 = 4;
+      sample.b4 = "b4";
+      sample.a5 = 5;
+      sample.b5 = "b5";
+      return sample;
+    }
+
+    @Override
+    Object buildByHand(Object source) {
+      Shapes.Level5 sample = (Shapes.Level5) source;
+      Shapes.Level5 built = new Shapes.Level5();
+      built.a1 = sample.a1;
+      built.b1 = sample.b1;
+      built.a2 = sample.a2;
+      built.b2 = sample.b2;
+      built.a3 = sample.a3;
+      built.b3 = sample.b3;
+      built.a4 = sample.a4;
+      built.b4 = sample.b4;
+      built.a5 = sample.a5;
+      built.b5 = sample.b5;
+      return built;
+    }
+  };
+
+  final Class<?> clazz;
+
+  Shape(Class<?> clazz) {
+    this.clazz = clazz;
+  }
+
+  /** @return A new instance with every field set to a non-default value. */
+  abstract Object sample();
+
+  /** @return A copy of {@code source} made by plain field assignments. */
+  abstract Object buildByHand(Object source);
+
+  /** @return Every instance field of {@link #clazz}, including inherited ones. */
+  Field[] fields() {
+    ClassPlan plan = ClassPlan.of(clazz);
+    ArrayList<Field> fields = new ArrayList<>();
+    for (int slot = 0; slot < plan.size(); slot++) {
+      fields.add(plan.getField(slot));
+    }
+    return fields.toArray(new Field[fields.size()]);
+  }
+}
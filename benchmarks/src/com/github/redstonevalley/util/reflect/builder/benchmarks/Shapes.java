@@ -0,0 +1,93 @@
+package com.github.redstonevalley.util.reflect.builder.benchmarks;
+
+/**
+ * The classes that the benchmarks build, one per {@link Shape}. Each has a public no-arg
+ * constructor so that every backend, including the constructing ones, can build it.
+ *
+ * @author cryoc
+ */
+public final class Shapes {
+
+  private Shapes() {}
+
+  public static class Few {
+    public int id;
+    public String name;
+
+    public Few() {}
+  }
+
+  public static class PrimitiveHeavy {
+    public boolean flag;
+    public byte b1;
+    public byte b2;
+    public short s1;
+    public short s2;
+    public char c1;
+    public int i1;
+    public int i2;
+    public int i3;
+    public int i4;
+    public long l1;
+    public long l2;
+    public float f1;
+    public float f2;
+    public double d1;
+    public double d2;
+
+    public PrimitiveHeavy() {}
+  }
+
+  public static class ReferenceHeavy {
+    public String r1;
+    public String r2;
+    public String r3;
+    public String r4;
+    public Object r5;
+    public Object r6;
+    public Object r7;
+    public Object r8;
+    public Integer r9;
+    public Integer r10;
+    public Long r11;
+    public Long r12;
+
+    public ReferenceHeavy() {}
+  }
+
+  public static class Level1 {
+    public int a1;
+    public String b1;
+
+    public Level1() {}
+  }
+
+  public static class Level2 extends Level1 {
+    public int a2;
+    public String b2;
+
+    public Level2() {}
+  }
+
+  public static class Level3 extends Level2 {
+    public int a3;
+    public String b3;
+
+    public Level3() {}
+  }
+
+  public static class Level4 extends Level3 {
+    public int a4;
+    public String b4;
+
+    public Level4() {}
+  }
+
+  /** The deep-hierarchy shape. */
+  public static class Level5 extends Level4 {
+    public int a5;
+    public String b5;
+
+    public Level5() {}
+  }
+}
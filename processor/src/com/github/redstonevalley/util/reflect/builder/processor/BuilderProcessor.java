@@ -0,0 +1,439 @@
+package com.github.redstonevalley.util.reflect.builder.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code PrecompiledBuilder} for each class annotated with {@code @GenerateBuilder}.
+ * The generated builder is a top-level class in the same package, named as by
+ * {@code PrecompiledBuilder.builderClassName}. It calls the class's no-argument constructor, and
+ * builds, clones and sets fields with ordinary field accesses, addressing each field by its slot in
+ * the class's {@code ClassPlan}. Fields that the generated code can't access directly, because
+ * they're private or final or their type isn't visible, are left to the reflection inherited from
+ * {@code TypeCheckedReflectiveBuilder}.
+ *
+ * <p>The processor refers to the library's classes only by name, so it has no dependencies.
+ *
+ * @author cryoc
+ */
+@SupportedAnnotationTypes(BuilderProcessor.ANNOTATION)
+public class BuilderProcessor extends AbstractProcessor {
+
+  static final String LIBRARY = "com.github.redstonevalley.util.reflect.builder";
+  static final String ANNOTATION = LIBRARY + ".GenerateBuilder";
+  private static final String SUFFIX = "_ReflectiveBuilder";
+  private static final String FIELD = "java.lang.reflect.Field";
+  private static final String CLASS_PLAN = LIBRARY + ".ClassPlan";
+  private static final String SLOT_VALUES = LIBRARY + ".SlotValues";
+  private static final String CONCURRENCY_POLICY = LIBRARY + ".ConcurrencyPolicy";
+
+  /** A field of the annotated class, in its {@code ClassPlan} slot. */
+  private static final class SlotField {
+    final VariableElement element;
+    final String declaringClass;
+    final String kind;
+    boolean direct;
+
+    SlotField(VariableElement element, String declaringClass, String kind, boolean direct) {
+      this.element = element;
+      this.declaringClass = declaringClass;
+      this.kind = kind;
+      this.direct = direct;
+    }
+
+    String name() {
+      return element.getSimpleName().toString();
+    }
+
+    boolean isPrimitive() {
+      return !kind.equals("OBJECT");
+    }
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (check(element)) {
+          generate((TypeElement) element);
+        }
+      }
+    }
+    return true;
+  }
+
+  /** @return Whether a builder can be generated for {@code element}, after reporting why not. */
+  private boolean check(Element element) {
+    if (element.getKind() != ElementKind.CLASS) {
+      return error(element, "@GenerateBuilder only applies to classes");
+    }
+    TypeElement type = (TypeElement) element;
+    if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+      return error(element, "@GenerateBuilder can't be applied to an abstract class");
+    }
+    for (Element enclosing = type; enclosing instanceof TypeElement;
+        enclosing = enclosing.getEnclosingElement()) {
+      TypeElement enclosingType = (TypeElement) enclosing;
+      if (enclosingType.getNestingKind() != NestingKind.TOP_LEVEL
+          && (enclosingType.getNestingKind() != NestingKind.MEMBER
+              || !enclosingType.getModifiers().contains(Modifier.STATIC))) {
+        return error(element, "@GenerateBuilder needs a top-level or static nested class");
+      }
+      if (enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+        return error(element, "@GenerateBuilder can't be applied to a private class");
+      }
+    }
+    for (ExecutableElement constructor :
+        ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return error(element, "@GenerateBuilder needs a no-argument constructor that isn't private");
+  }
+
+  private boolean error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    return false;
+  }
+
+  /** @return The fields of {@code type} and its superclasses, in {@code ClassPlan} slot order. */
+  private List<SlotField> slotFields(TypeElement type, PackageElement builderPackage) {
+    Deque<TypeElement> hierarchy = new ArrayDeque<>();
+    for (TypeElement current = type; current != null; current = superclass(current)) {
+      if (!current.getQualifiedName().contentEquals("java.lang.Object")) {
+        hierarchy.push(current);
+      }
+    }
+    List<SlotField> fields = new ArrayList<>();
+    for (TypeElement declaring : hierarchy) {
+      String declaringClass =
+          processingEnv.getElementUtils().getBinaryName(declaring).toString();
+      boolean declaringVisible = isVisible(declaring, builderPackage);
+      for (VariableElement field : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.STATIC)) {
+          continue;
+        }
+        boolean samePackage = packageOf(declaring).equals(builderPackage);
+        boolean direct = declaringVisible
+            && !modifiers.contains(Modifier.FINAL)
+            && !modifiers.contains(Modifier.PRIVATE)
+            && (samePackage || modifiers.contains(Modifier.PUBLIC))
+            && isVisible(field.asType(), builderPackage);
+        fields.add(new SlotField(field, declaringClass, kindOf(field.asType()), direct));
+      }
+    }
+    // A field shadowed by a subclass's field of the same name can't be reached as built.name.
+    for (int slot = 0; slot < fields.size(); slot++) {
+      for (int later = slot + 1; later < fields.size(); later++) {
+        if (fields.get(later).name().equals(fields.get(slot).name())) {
+          fields.get(slot).direct = false;
+        }
+      }
+    }
+    return fields;
+  }
+
+  private TypeElement superclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    return (TypeElement) ((DeclaredType) superclass).asElement();
+  }
+
+  private PackageElement packageOf(Element element) {
+    return processingEnv.getElementUtils().getPackageOf(element);
+  }
+
+  /** @return Whether code in {@code fromPackage} can name the erasure of {@code type}. */
+  private boolean isVisible(TypeMirror type, PackageElement fromPackage) {
+    TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+    if (erasure.getKind() == TypeKind.ARRAY) {
+      return isVisible(((ArrayType) erasure).getComponentType(), fromPackage);
+    } else if (erasure.getKind() == TypeKind.DECLARED) {
+      return isVisible((TypeElement) ((DeclaredType) erasure).asElement(), fromPackage);
+    }
+    return erasure.getKind().isPrimitive();
+  }
+
+  private boolean isVisible(TypeElement type, PackageElement fromPackage) {
+    boolean samePackage = packageOf(type).equals(fromPackage);
+    for (Element enclosing = type; enclosing instanceof TypeElement;
+        enclosing = enclosing.getEnclosingElement()) {
+      Set<Modifier> modifiers = enclosing.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE)
+          || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return The suffix of the {@code ClassPlan.KIND_*} constant for {@code type}. */
+  private static String kindOf(TypeMirror type) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return "BOOLEAN";
+      case BYTE:
+        return "BYTE";
+      case SHORT:
+        return "SHORT";
+      case CHAR:
+        return "CHAR";
+      case INT:
+        return "INT";
+      case LONG:
+        return "LONG";
+      case FLOAT:
+        return "FLOAT";
+      case DOUBLE:
+        return "DOUBLE";
+      default:
+        return "OBJECT";
+    }
+  }
+
+  /** @return An expression that decodes {@code bits} into a value of the field's type. */
+  private static String fromBits(SlotField field, String bits) {
+    switch (field.kind) {
+      case "BOOLEAN":
+        return bits + " != 0";
+      case "FLOAT":
+        return "Float.intBitsToFloat((int) " + bits + ")";
+      case "DOUBLE":
+        return "Double.longBitsToDouble(" + bits + ")";
+      case "LONG":
+        return bits;
+      default:
+        return "(" + field.element.asType() + ") " + bits;
+    }
+  }
+
+  /** @return An expression that encodes {@code value}, of the field's type, as bits. */
+  private static String toBits(SlotField field, String value) {
+    switch (field.kind) {
+      case "BOOLEAN":
+        return value + " ? 1 : 0";
+      case "FLOAT":
+        return "Float.floatToRawIntBits(" + value + ")";
+      case "DOUBLE":
+        return "Double.doubleToRawLongBits(" + value + ")";
+      default:
+        return value;
+    }
+  }
+
+  private void generate(TypeElement type) {
+    PackageElement builderPackage = packageOf(type);
+    String packageName = builderPackage.isUnnamed() ? "" : builderPackage.getQualifiedName() + ".";
+    String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+    String builderName =
+        binaryName.substring(packageName.length()).replace('$', '_') + SUFFIX;
+    String target = type.getQualifiedName().toString();
+    List<SlotField> fields = slotFields(type, builderPackage);
+    try (PrintWriter out = new PrintWriter(
+        processingEnv.getFiler().createSourceFile(packageName + builderName, type).openWriter())) {
+      write(out, builderPackage, builderName, target, fields);
+    } catch (IOException e) {
+      error(type, "Can't write " + packageName + builderName + ": " + e);
+    }
+  }
+
+  private void write(PrintWriter out, PackageElement builderPackage, String builderName,
+      String target, List<SlotField> fields) {
+    if (!builderPackage.isUnnamed()) {
+      out.println("package " + builderPackage.getQualifiedName() + ";");
+      out.println();
+    }
+    out.println("/**");
+    out.println(" * Builds {@link " + target + "} with direct field accesses. Generated by");
+    out.println(" * {@code " + getClass().getName() + "}; don't edit.");
+    out.println(" */");
+    // Fields are cast to their erasures, which may be raw, unchecked, or redundant.
+    out.println("@SuppressWarnings({\"rawtypes\", \"unchecked\", \"cast\"})");
+    out.println("public final class " + builderName + " extends " + LIBRARY
+        + ".PrecompiledBuilder<" + target + "> {");
+    out.println();
+    out.println("  static {");
+    out.println("    checkSlots(");
+    out.println("        " + target + ".class,");
+    out.println("        new String[] {");
+    for (SlotField field : fields) {
+      out.println("          \"" + field.declaringClass + "\",");
+    }
+    out.println("        },");
+    out.println("        new String[] {");
+    for (SlotField field : fields) {
+      out.println("          \"" + field.name() + "\",");
+    }
+    out.println("        });");
+    out.println("  }");
+    out.println();
+    out.println("  public " + builderName + "() {");
+    out.println("    this(" + CONCURRENCY_POLICY + ".MONITOR);");
+    out.println("  }");
+    out.println();
+    out.println("  public " + builderName + "(" + CONCURRENCY_POLICY + " concurrencyPolicy) {");
+    out.println("    super(" + target + ".class, concurrencyPolicy);");
+    out.println("  }");
+    out.println();
+    out.println("  @Override");
+    out.println("  protected " + target + " allocateInstance() {");
+    out.println("    return new " + target + "();");
+    out.println("  }");
+    out.println();
+    writeWriteFields(out, target, fields);
+    writeSetFieldInInstance(out, target, fields);
+    writePutPrimitive(out, target, fields);
+    writeReadFields(out, target, fields);
+    out.println("}");
+  }
+
+  private void writeWriteFields(PrintWriter out, String target, List<SlotField> fields) {
+    out.println("  @Override");
+    out.println("  protected void writeFields(" + target + " built, " + SLOT_VALUES
+        + " configured) {");
+    out.println("    boolean[] isSet = configured.isSet;");
+    out.println("    Object[] values = configured.values;");
+    out.println("    long[] bits = configured.bits;");
+    for (int slot = 0; slot < fields.size(); slot++) {
+      SlotField field = fields.get(slot);
+      out.println("    if (isSet[" + slot + "]) {");
+      if (!field.direct) {
+        out.println("      writeSlot(built, configured, " + slot + ", " + slot + ");");
+      } else if (field.isPrimitive()) {
+        out.println("      built." + field.name() + " = "
+            + fromBits(field, "bits[" + slot + "]") + ";");
+      } else {
+        out.println("      built." + field.name() + " = (" + erasure(field) + ") values[" + slot
+            + "];");
+      }
+      out.println("    }");
+    }
+    out.println("    writeOtherFields(built, configured);");
+    out.println("  }");
+    out.println();
+  }
+
+  private void writeSetFieldInInstance(PrintWriter out, String target, List<SlotField> fields) {
+    out.println("  @Override");
+    out.println("  protected void setFieldInInstance(" + target + " built, " + FIELD
+        + " field, long fieldOffset,");
+    out.println("      int kind, Object value) {");
+    out.println("    switch ((int) fieldOffset) {");
+    for (int slot = 0; slot < fields.size(); slot++) {
+      SlotField field = fields.get(slot);
+      if (!field.direct) {
+        continue;
+      }
+      out.println("      case " + slot + ":");
+      if (field.isPrimitive()) {
+        out.println("        putPrimitive(built, field, fieldOffset, kind, toBits(kind, value));");
+      } else {
+        out.println("        built." + field.name() + " = (" + erasure(field) + ") value;");
+      }
+      out.println("        break;");
+    }
+    out.println("      default:");
+    out.println("        super.setFieldInInstance(built, field, fieldOffset, kind, value);");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+  }
+
+  private void writePutPrimitive(PrintWriter out, String target, List<SlotField> fields) {
+    out.println("  @Override");
+    out.println("  protected void putPrimitive(" + target + " built, " + FIELD
+        + " field, long fieldOffset, int kind,");
+    out.println("      long bits) {");
+    out.println("    switch ((int) fieldOffset) {");
+    for (int slot = 0; slot < fields.size(); slot++) {
+      SlotField field = fields.get(slot);
+      if (!field.direct || !field.isPrimitive()) {
+        continue;
+      }
+      out.println("      case " + slot + ":");
+      out.println("        built." + field.name() + " = " + fromBits(field, "bits") + ";");
+      out.println("        break;");
+    }
+    out.println("      default:");
+    out.println("        super.putPrimitive(built, field, fieldOffset, kind, bits);");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+  }
+
+  private void writeReadFields(PrintWriter out, String target, List<SlotField> fields) {
+    out.println("  @Override");
+    out.println("  protected void readFields(Object source, " + CLASS_PLAN
+        + " sourcePlan, int slotCount,");
+    out.println("      Object[] values, long[] bits) {");
+    out.println("    if (source.getClass() != " + target + ".class || slotCount != "
+        + fields.size() + ") {");
+    out.println("      super.readFields(source, sourcePlan, slotCount, values, bits);");
+    out.println("      return;");
+    out.println("    }");
+    out.println("    if (!locksSources()) {");
+    out.println("      readDirect((" + target + ") source, values, bits);");
+    out.println("      return;");
+    out.println("    }");
+    out.println("    synchronized (source) {");
+    out.println("      readDirect((" + target + ") source, values, bits);");
+    out.println("    }");
+    out.println("  }");
+    out.println();
+    out.println("  private void readDirect(" + target + " source, Object[] values, long[] bits) {");
+    for (int slot = 0; slot < fields.size(); slot++) {
+      SlotField field = fields.get(slot);
+      String kind = CLASS_PLAN + ".KIND_" + field.kind;
+      if (!field.direct && field.isPrimitive()) {
+        out.println("    bits[" + slot + "] = readFieldBits(source, plan.getField(" + slot
+            + "), " + kind + ");");
+      } else if (!field.direct) {
+        out.println("    values[" + slot + "] = readField(source, plan.getField(" + slot
+            + "));");
+      } else if (field.isPrimitive()) {
+        out.println("    bits[" + slot + "] = " + toBits(field, "source." + field.name()) + ";");
+      } else {
+        out.println("    values[" + slot + "] = source." + field.name() + ";");
+      }
+    }
+    out.println("  }");
+  }
+
+  private String erasure(SlotField field) {
+    return processingEnv.getTypeUtils().erasure(field.element.asType()).toString();
+  }
+}
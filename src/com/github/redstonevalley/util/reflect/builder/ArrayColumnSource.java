@@ -0,0 +1,115 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ColumnSource} backed by one array per column. A primitive field's column may be an
+ * array of exactly that primitive type, which is read without boxing, or an {@code Object[]} of
+ * boxed values; any other field's column must be an {@code Object[]}.
+ *
+ * @author cryoc
+ */
+public final class ArrayColumnSource implements ColumnSource {
+  private final Field[] fields;
+  private final int[] kinds;
+  private final Object[] columns;
+
+  /**
+   * @param fields The field for each column.
+   * @param columns The array of values for each column.
+   * @throws IllegalArgumentException if a column's array doesn't suit its field.
+   */
+  public ArrayColumnSource(Field[] fields, Object[] columns) {
+    if (fields.length != columns.length) {
+      throw new IllegalArgumentException(String.format(
+          "%d fields but %d columns", fields.length, columns.length));
+    }
+    this.fields = fields.clone();
+    this.columns = columns.clone();
+    kinds = new int[fields.length];
+    for (int column = 0; column < fields.length; column++) {
+      Class<?> fieldType = fields[column].getType();
+      Class<?> arrayType = this.columns[column].getClass();
+      if (!arrayType.equals(Object[].class)
+          && !(fieldType.isPrimitive() && arrayType.getComponentType() == fieldType)) {
+        throw new IllegalArgumentException(String.format(
+            "Column of type %s can't supply field %s", arrayType, fields[column]));
+      }
+      kinds[column] = ClassPlan.kindOf(fieldType);
+    }
+  }
+
+  @Override
+  public int getColumnCount() {
+    return fields.length;
+  }
+
+  @Override
+  public Field getField(int column) {
+    return fields[column];
+  }
+
+  @Override
+  @Nullable
+  public Object getValue(int column, int row) {
+    return ((Object[]) columns[column])[row];
+  }
+
+  /** @throws ClassCastException if a boxed value can't be assigned to the column's field. */
+  @Override
+  public long getBits(int column, int row) {
+    Object array = columns[column];
+    switch (kinds[column]) {
+      case ClassPlan.KIND_BOOLEAN:
+        if (array instanceof boolean[]) {
+          return ((boolean[]) array)[row] ? 1 : 0;
+        }
+        break;
+      case ClassPlan.KIND_BYTE:
+        if (array instanceof byte[]) {
+          return ((byte[]) array)[row];
+        }
+        break;
+      case ClassPlan.KIND_SHORT:
+        if (array instanceof short[]) {
+          return ((short[]) array)[row];
+        }
+        break;
+      case ClassPlan.KIND_CHAR:
+        if (array instanceof char[]) {
+          return ((char[]) array)[row];
+        }
+        break;
+      case ClassPlan.KIND_INT:
+        if (array instanceof int[]) {
+          return ((int[]) array)[row];
+        }
+        break;
+      case ClassPlan.KIND_LONG:
+        if (array instanceof long[]) {
+          return ((long[]) array)[row];
+        }
+        break;
+      case ClassPlan.KIND_FLOAT:
+        if (array instanceof float[]) {
+          return Float.floatToRawIntBits(((float[]) array)[row]);
+        }
+        break;
+      case ClassPlan.KIND_DOUBLE:
+        if (array instanceof double[]) {
+          return Double.doubleToRawLongBits(((double[]) array)[row]);
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Not a primitive column: " + column);
+    }
+    Object value = ((Object[]) array)[row];
+    if (!ReflectiveBuilder.isReallyAssignableFrom(fields[column].getType(), value)) {
+      throw new ClassCastException(String.format(
+          "Value %s in row %d can't be assigned to field %s", value, row, fields[column]));
+    }
+    return ReflectiveBuilder.toBits(kinds[column], value);
+  }
+}
@@ -0,0 +1,395 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Flow.Processor} that turns records of field values into instances of T. Each record is
+ * an {@code Object[]} holding one value for each of a fixed list of fields, which may be boxed
+ * primitives. Records are gathered into micro-batches that are built with
+ * {@link ReflectiveBuilder#buildAll(int, ColumnSource)} on an {@link Executor}, such as a fixed
+ * pool or one that starts a virtual thread per task, with at most {@code parallelism} batches
+ * being built at once. Fields that aren't in the records are set as they're configured in the
+ * builder when each batch starts.
+ *
+ * <p>A batch is started as soon as a task is free, with however many records have arrived, up to
+ * {@code batchSize}; so batches are small, and latency low, when records arrive slowly, and fill up
+ * when the tasks are all busy. At most {@code batchSize * (parallelism + 1)} records are requested
+ * from upstream but not yet delivered downstream, which bounds what this buffers however slowly
+ * the subscriber requests instances. Instances are delivered in the order of their records if
+ * {@code ordered} is true, and otherwise in the order their batches finish.
+ *
+ * <p>This has one subscriber; any later one is sent {@link IllegalStateException}. A record that
+ * can't be built, or an error from upstream, is sent to the subscriber at once, and the instances
+ * that haven't yet been delivered are dropped.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this builds.
+ */
+public final class BuildProcessor<T> implements Flow.Processor<Object[], T> {
+  private final ReflectiveBuilder<T> builder;
+  private final Field[] fields;
+  private final Executor executor;
+  private final int parallelism;
+  private final int batchSize;
+  private final boolean ordered;
+  private final int capacity;
+
+  /** Guards the fields below. */
+  private final Object lock = new Object();
+
+  @Nullable
+  private Flow.Subscription upstream;
+  private boolean hasSubscriber;
+  @Nullable
+  private Flow.Subscriber<? super T> downstream;
+  /** Records that have arrived but aren't in a batch yet. */
+  private final ArrayDeque<Object[]> records = new ArrayDeque<>();
+  /** The number of batches being built. */
+  private int running;
+  private long nextBatch;
+  /** The batch whose instances are delivered next, if {@link #ordered}. */
+  private long nextDelivered;
+  /** Batches that finished before an earlier one, if {@link #ordered}. */
+  private final HashMap<Long, T[]> finished = new HashMap<>();
+  /** Instances waiting for demand. */
+  private final ArrayDeque<T> ready = new ArrayDeque<>();
+  /** Records requested from upstream whose instances haven't been delivered or dropped. */
+  private int outstanding;
+  private long demand;
+  private boolean upstreamDone;
+  @Nullable
+  private Throwable error;
+  private boolean terminated;
+  private boolean cancelled;
+
+  /** Makes sure only one thread at a time signals the subscriber. */
+  private final AtomicInteger drains = new AtomicInteger();
+
+  /**
+   * @param builder The builder that builds each batch. It may be configured while this runs, as
+   *          its {@link ConcurrencyPolicy} allows; each batch sees the configuration at its start.
+   * @param fields The field whose value is at each index of a record.
+   * @param executor Runs the tasks that build batches.
+   * @param parallelism The most batches that are built at once.
+   * @param batchSize The most records in one batch.
+   * @param ordered Whether instances are delivered in the order of their records.
+   * @throws IllegalArgumentException if {@code parallelism} or {@code batchSize} isn't positive.
+   */
+  public BuildProcessor(ReflectiveBuilder<T> builder, Field[] fields, Executor executor,
+      int parallelism, int batchSize, boolean ordered) {
+    if (parallelism <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException(String.format(
+          "Parallelism %d and batch size %d must be positive", parallelism, batchSize));
+    }
+    this.builder = builder;
+    this.fields = fields.clone();
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+    this.ordered = ordered;
+    capacity = (int) Math.min(Integer.MAX_VALUE, (long) batchSize * (parallelism + 1));
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    Objects.requireNonNull(subscriber);
+    boolean accepted;
+    synchronized (lock) {
+      accepted = !hasSubscriber;
+      hasSubscriber = true;
+    }
+    if (!accepted) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {}
+
+        @Override
+        public void cancel() {}
+      });
+      subscriber.onError(new IllegalStateException("BuildProcessor already has a subscriber"));
+      return;
+    }
+    subscriber.onSubscribe(new Downstream());
+    synchronized (lock) {
+      downstream = subscriber;
+    }
+    drain();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Objects.requireNonNull(subscription);
+    int request;
+    synchronized (lock) {
+      if (upstream != null || upstreamDone) {
+        request = -1;
+      } else {
+        upstream = subscription;
+        request = topUp();
+      }
+    }
+    if (request < 0) {
+      subscription.cancel();
+    } else if (request > 0) {
+      subscription.request(request);
+    }
+  }
+
+  /** @throws NullPointerException if {@code record} is null. */
+  @Override
+  public void onNext(Object[] record) {
+    Objects.requireNonNull(record);
+    if (record.length != fields.length) {
+      fail(new IllegalArgumentException(String.format(
+          "Record has %d values for %d fields", record.length, fields.length)));
+      return;
+    }
+    synchronized (lock) {
+      if (upstreamDone) {
+        return;
+      }
+      records.add(record);
+    }
+    dispatch();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    Objects.requireNonNull(throwable);
+    synchronized (lock) {
+      if (upstreamDone) {
+        return;
+      }
+      upstreamDone = true;
+      recordFailure(throwable);
+    }
+    drain();
+  }
+
+  @Override
+  public void onComplete() {
+    synchronized (lock) {
+      upstreamDone = true;
+    }
+    dispatch();
+    drain();
+  }
+
+  /**
+   * @return The number of records to request from upstream to fill this up again, which have been
+   *         added to {@link #outstanding}; or 0 if that's fewer than a batch.
+   */
+  private int topUp() {
+    int free = capacity - outstanding;
+    if (upstream == null || upstreamDone || free < Math.min(batchSize, capacity)) {
+      return 0;
+    }
+    outstanding = capacity;
+    return free;
+  }
+
+  /** Starts batches of the records that have arrived, while fewer than parallelism are running. */
+  private void dispatch() {
+    List<Batch> batches = new ArrayList<>();
+    synchronized (lock) {
+      while (running < parallelism && !records.isEmpty() && error == null && !cancelled) {
+        Object[][] batch = new Object[Math.min(batchSize, records.size())][];
+        for (int i = 0; i < batch.length; i++) {
+          batch[i] = records.poll();
+        }
+        running++;
+        batches.add(new Batch(nextBatch++, batch));
+      }
+    }
+    for (Batch batch : batches) {
+      try {
+        executor.execute(batch);
+      } catch (RejectedExecutionException e) {
+        fail(e);
+        return;
+      }
+    }
+  }
+
+  /** Cancels upstream, and sends {@code failure} downstream instead of what's buffered. */
+  private void fail(Throwable failure) {
+    Flow.Subscription toCancel;
+    synchronized (lock) {
+      toCancel = upstreamDone ? null : upstream;
+      upstreamDone = true;
+      recordFailure(failure);
+    }
+    if (toCancel != null) {
+      toCancel.cancel();
+    }
+    drain();
+  }
+
+  /**
+   * Records {@code failure}, unless there's already an error, and drops everything buffered. Called
+   * while holding the lock.
+   */
+  private void recordFailure(Throwable failure) {
+    if (error != null || terminated) {
+      return;
+    }
+    error = failure;
+    records.clear();
+    finished.clear();
+    ready.clear();
+  }
+
+  /** Delivers ready instances while there's demand, and then any terminal signal. */
+  private void drain() {
+    if (drains.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      while (true) {
+        Flow.Subscriber<? super T> subscriber;
+        T next = null;
+        Throwable failure = null;
+        boolean complete = false;
+        int request = 0;
+        Flow.Subscription source;
+        synchronized (lock) {
+          subscriber = downstream;
+          source = upstream;
+          if (subscriber == null || cancelled || terminated) {
+            break;
+          }
+          if (error != null) {
+            terminated = true;
+            failure = error;
+          } else if (demand > 0 && !ready.isEmpty()) {
+            next = ready.poll();
+            demand--;
+            outstanding--;
+            request = topUp();
+          } else if (upstreamDone && records.isEmpty() && running == 0 && ready.isEmpty()) {
+            terminated = true;
+            complete = true;
+          } else {
+            break;
+          }
+        }
+        if (request > 0) {
+          source.request(request);
+        }
+        if (failure != null) {
+          subscriber.onError(failure);
+        } else if (complete) {
+          subscriber.onComplete();
+        } else {
+          subscriber.onNext(next);
+        }
+      }
+      missed = drains.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  /** The subscription that the subscriber is given. */
+  private final class Downstream implements Flow.Subscription {
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        fail(new IllegalArgumentException("Non-positive request: " + n));
+        return;
+      }
+      synchronized (lock) {
+        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      Flow.Subscription toCancel;
+      synchronized (lock) {
+        toCancel = upstreamDone ? null : upstream;
+        upstreamDone = true;
+        cancelled = true;
+        records.clear();
+        finished.clear();
+        ready.clear();
+      }
+      if (toCancel != null) {
+        toCancel.cancel();
+      }
+    }
+  }
+
+  /** One micro-batch of records, built on {@link #executor}. */
+  private final class Batch implements Runnable {
+    final long sequence;
+    final Object[][] batch;
+
+    Batch(long sequence, Object[][] batch) {
+      this.sequence = sequence;
+      this.batch = batch;
+    }
+
+    /**
+     * Builds the batch. Anything it throws, even an {@link Error}, is sent downstream, so the
+     * subscriber is never left waiting; errors of the virtual machine itself are then rethrown.
+     */
+    @Override
+    public void run() {
+      T[] built;
+      try {
+        built = build();
+      } catch (Throwable t) {
+        synchronized (lock) {
+          running--;
+        }
+        fail(t);
+        if (t instanceof VirtualMachineError) {
+          throw (VirtualMachineError) t;
+        }
+        return;
+      }
+      synchronized (lock) {
+        running--;
+        if (error == null && !cancelled) {
+          if (!ordered) {
+            ready.addAll(Arrays.asList(built));
+          } else {
+            finished.put(sequence, built);
+            for (T[] next; (next = finished.remove(nextDelivered)) != null; nextDelivered++) {
+              ready.addAll(Arrays.asList(next));
+            }
+          }
+        }
+      }
+      dispatch();
+      drain();
+    }
+
+    /** Transposes the records into columns, and builds them. */
+    private T[] build() {
+      Object[] columns = new Object[fields.length];
+      for (int column = 0; column < fields.length; column++) {
+        Object[] values = new Object[batch.length];
+        for (int row = 0; row < batch.length; row++) {
+          values[row] = batch[row][column];
+        }
+        columns[column] = values;
+      }
+      return builder.buildAll(batch.length, new ArrayColumnSource(fields, columns));
+    }
+  }
+}
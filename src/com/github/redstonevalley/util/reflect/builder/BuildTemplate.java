@@ -0,0 +1,76 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable snapshot of a {@link ReflectiveBuilder}'s configuration, created by
+ * {@link ReflectiveBuilder#compile()}. The field values are frozen into flat parallel arrays, with
+ * primitives kept unboxed, so {@link #newInstance()} needs neither a lock nor any hash lookups,
+ * and can be called from any number of threads at once. Later changes to the builder don't affect
+ * the template.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this template builds.
+ */
+public final class BuildTemplate<T> {
+  private final ReflectiveBuilder<T> backend;
+  private final Object allocationState;
+  private final Field[] fields;
+  private final long[] offsets;
+  private final int[] kinds;
+  private final Object[] values;
+  private final long[] bits;
+
+  /** Which fields hold arrays that each instance gets its own copy of, or null if none do. */
+  @Nullable
+  private final boolean[] copiesArrays;
+
+  BuildTemplate(ReflectiveBuilder<T> backend, Object allocationState, Field[] fields,
+      long[] offsets, int[] kinds, Object[] values, long[] bits, @Nullable boolean[] copiesArrays) {
+    this.backend = backend;
+    this.allocationState = allocationState;
+    this.fields = fields;
+    this.offsets = offsets;
+    this.kinds = kinds;
+    this.values = values;
+    this.bits = bits;
+    this.copiesArrays = copiesArrays;
+  }
+
+  /** @return The class that this template builds. */
+  public Class<T> getBuiltClass() {
+    return backend.clazz;
+  }
+
+  /** @return The number of fields that {@link #newInstance()} sets. */
+  public int getFieldCount() {
+    return fields.length;
+  }
+
+  /**
+   * @return A new instance with the fields set as they were configured in the builder when this
+   *         template was compiled.
+   */
+  public T newInstance() {
+    T built;
+    try {
+      built = backend.allocateInstance(allocationState);
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    }
+    for (int i = 0; i < fields.length; i++) {
+      if (kinds[i] == ClassPlan.KIND_OBJECT) {
+        Object value = copiesArrays != null && copiesArrays[i] && values[i] != null
+            ? backend.copyArray(values[i])
+            : values[i];
+        backend.setFieldInInstance(built, fields[i], offsets[i], kinds[i], value);
+      } else {
+        backend.putPrimitive(built, fields[i], offsets[i], kinds[i], bits[i]);
+      }
+    }
+    return built;
+  }
+}
@@ -0,0 +1,92 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+/**
+ * A bounded pool of instances built by a {@link ReflectiveBuilder}, which {@link #acquire()}
+ * rewrites with {@link ReflectiveBuilder#build(Object)} rather than allocating new ones. Each
+ * thread has its own free list, so neither call takes a lock; an instance released on one thread
+ * can only be acquired again on that thread.
+ *
+ * <p>Once an instance is released, the caller must not use it again, since the next
+ * {@link #acquire()} on the same thread will overwrite it.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this pool's builder builds.
+ */
+public final class BuilderPool<T> {
+  private final ReflectiveBuilder<T> builder;
+  private final int capacityPerThread;
+  private final ThreadLocal<FreeList> freeLists;
+
+  /** A stack of released instances, used by only one thread. */
+  private static final class FreeList {
+    final Object[] instances;
+    int size;
+
+    FreeList(int capacity) {
+      instances = new Object[capacity];
+    }
+  }
+
+  /**
+   * @param builder The builder that configures the pooled instances.
+   * @param capacityPerThread The most released instances that each thread keeps.
+   * @throws IllegalArgumentException if {@code capacityPerThread} is negative.
+   * @throws UnsupportedOperationException if {@code builder} can't reuse instances.
+   */
+  public BuilderPool(ReflectiveBuilder<T> builder, int capacityPerThread) {
+    if (capacityPerThread < 0) {
+      throw new IllegalArgumentException("Negative capacity: " + capacityPerThread);
+    }
+    if (!builder.allocatesWithoutConstructor()) {
+      throw new UnsupportedOperationException(
+          String.format("%s can't reuse instances", builder.getClass().getName()));
+    }
+    this.builder = builder;
+    this.capacityPerThread = capacityPerThread;
+    freeLists = ThreadLocal.withInitial(() -> new FreeList(capacityPerThread));
+  }
+
+  /** @return The builder that configures the pooled instances. */
+  public ReflectiveBuilder<T> getBuilder() {
+    return builder;
+  }
+
+  /** @return The most released instances that each thread keeps. */
+  public int getCapacityPerThread() {
+    return capacityPerThread;
+  }
+
+  /**
+   * @return An instance built as by {@link ReflectiveBuilder#build()}: one released earlier on this
+   *         thread and rewritten, if there is one, or else a new one.
+   */
+  @SuppressWarnings("unchecked")
+  public T acquire() {
+    FreeList freeList = freeLists.get();
+    if (freeList.size == 0) {
+      return builder.build();
+    }
+    int top = --freeList.size;
+    T reuse = (T) freeList.instances[top];
+    freeList.instances[top] = null;
+    return builder.build(reuse);
+  }
+
+  /**
+   * Returns an instance to this thread's free list, or drops it for the garbage collector if the
+   * list is full.
+   *
+   * @throws IllegalArgumentException if {@code instance}'s class isn't exactly the builder's class.
+   */
+  public void release(T instance) {
+    if (instance.getClass() != builder.clazz) {
+      throw new IllegalArgumentException(
+          String.format("Can't pool a %s as a %s", instance.getClass(), builder.clazz));
+    }
+    FreeList freeList = freeLists.get();
+    if (freeList.size < freeList.instances.length) {
+      freeList.instances[freeList.size++] = instance;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilders.Backend;
+
+/**
+ * The reflective metadata that every {@link ReflectiveBuilder} needs about a class, computed once
+ * per class and shared by all builders in the process. Each non-static field of the class and its
+ * superclasses is assigned a slot; the fields of a superclass always occupy a prefix of the slots
+ * of its subclasses, so the slots of a common ancestor are the same in both.
+ *
+ * <p>If a {@link PlanArchive} on the class's class loader describes the class as it is now, the
+ * plan reuses the name index and backend choice that the archive recorded.
+ *
+ * @author cryoc
+ */
+public final class ClassPlan {
+
+  public static final int KIND_BOOLEAN = 0;
+  public static final int KIND_BYTE = 1;
+  public static final int KIND_SHORT = 2;
+  public static final int KIND_CHAR = 3;
+  public static final int KIND_INT = 4;
+  public static final int KIND_LONG = 5;
+  public static final int KIND_FLOAT = 6;
+  public static final int KIND_DOUBLE = 7;
+  public static final int KIND_OBJECT = 8;
+
+  private static final ClassValue<ClassPlan> PLANS = new ClassValue<ClassPlan>() {
+    @Override
+    protected ClassPlan computeValue(Class<?> type) {
+      return new ClassPlan(type);
+    }
+  };
+
+  private final Class<?> clazz;
+  private final int inheritedSize;
+  private final Field[] fields;
+  private final int[] kinds;
+  /** Accessible copies of {@link #fields}, each made the first time it's needed. */
+  private final AtomicReferenceArray<Field> accessibleFields;
+  private final HashMap<Field, Integer> slots;
+  private final NameIndex names;
+  @Nullable
+  private final Backend archivedBackend;
+
+  private ClassPlan(Class<?> clazz) {
+    this.clazz = clazz;
+    Class<?> superclass = clazz.getSuperclass();
+    ArrayList<Field> fieldList = new ArrayList<>();
+    if (superclass == null || superclass.equals(Object.class)) {
+      inheritedSize = 0;
+    } else {
+      ClassPlan superPlan = of(superclass);
+      inheritedSize = superPlan.size();
+      for (Field field : superPlan.fields) {
+        fieldList.add(field);
+      }
+    }
+    if (!clazz.isArray()) {
+      for (Field field : clazz.getDeclaredFields()) {
+        if (!(Modifier.isStatic(field.getModifiers()))) {
+          fieldList.add(field);
+        }
+      }
+    }
+    fields = fieldList.toArray(new Field[fieldList.size()]);
+    kinds = new int[fields.length];
+    accessibleFields = new AtomicReferenceArray<>(fields.length);
+    slots = new HashMap<>(fields.length * 2);
+    LinkedHashMap<String, Integer> slotsByName = new LinkedHashMap<>();
+    for (int slot = 0; slot < fields.length; slot++) {
+      kinds[slot] = kindOf(fields[slot].getType());
+      slots.put(fields[slot], slot);
+      // Later slots belong to subclasses, whose fields shadow their superclasses' fields.
+      slotsByName.put(fields[slot].getName(), slot);
+    }
+    PlanArchive.Entry archived = PlanArchive.entryFor(clazz);
+    if (archived != null && archived.describes(clazz, fields, inheritedSize)) {
+      names = new NameIndex(slotsByName, archived.seeds);
+      archivedBackend = archived.backend();
+    } else {
+      names = new NameIndex(slotsByName);
+      archivedBackend = null;
+    }
+  }
+
+  /**
+   * @return The plan for {@code clazz}, which is computed on the first call and then cached.
+   */
+  public static ClassPlan of(Class<?> clazz) {
+    return PLANS.get(clazz);
+  }
+
+  /**
+   * @return The {@code KIND_*} constant for a field or value of type {@code type}.
+   */
+  public static int kindOf(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return KIND_OBJECT;
+    } else if (type.equals(boolean.class)) {
+      return KIND_BOOLEAN;
+    } else if (type.equals(byte.class)) {
+      return KIND_BYTE;
+    } else if (type.equals(short.class)) {
+      return KIND_SHORT;
+    } else if (type.equals(char.class)) {
+      return KIND_CHAR;
+    } else if (type.equals(int.class)) {
+      return KIND_INT;
+    } else if (type.equals(long.class)) {
+      return KIND_LONG;
+    } else if (type.equals(float.class)) {
+      return KIND_FLOAT;
+    } else if (type.equals(double.class)) {
+      return KIND_DOUBLE;
+    } else {
+      throw new IllegalArgumentException("No field can have type " + type);
+    }
+  }
+
+  /** @return The class this plan describes. */
+  public Class<?> getPlannedClass() {
+    return clazz;
+  }
+
+  /** @return The number of non-static fields in the class, including inherited ones. */
+  public int size() {
+    return fields.length;
+  }
+
+  /** @return The number of slots that belong to fields declared in superclasses. */
+  public int getInheritedSize() {
+    return inheritedSize;
+  }
+
+  /**
+   * @return The field in the given slot. It shouldn't be made accessible by the caller; use
+   *         {@link #getAccessibleField(int)} instead.
+   */
+  public Field getField(int slot) {
+    return fields[slot];
+  }
+
+  /**
+   * @return An accessible copy of the field in the given slot, which is made the first time it's
+   *         needed and then shared. The field returned by {@link #getField(int)} is left as it was.
+   * @throws SecurityException if the field cannot be made accessible.
+   */
+  public Field getAccessibleField(int slot) {
+    Field accessible = accessibleFields.get(slot);
+    if (accessible == null) {
+      Field field = fields[slot];
+      try {
+        accessible = field.getDeclaringClass().getDeclaredField(field.getName());
+      } catch (NoSuchFieldException e) {
+        throw new RuntimeException(e);
+      }
+      accessible.setAccessible(true);
+      if (!accessibleFields.compareAndSet(slot, null, accessible)) {
+        accessible = accessibleFields.get(slot);
+      }
+    }
+    return accessible;
+  }
+
+  /** @return The {@code KIND_*} constant for the type of the field in the given slot. */
+  public int getKind(int slot) {
+    return kinds[slot];
+  }
+
+  /**
+   * @return The slot of {@code field} in this plan, or -1 if {@code field} is static or isn't a
+   *         field of the planned class or one of its superclasses.
+   */
+  public int slotOf(Field field) {
+    Integer slot = slots.get(field);
+    return slot == null ? -1 : slot;
+  }
+
+  /**
+   * @return The slot of the non-static field named {@code name} in the planned class or one of its
+   *         superclasses, or -1 if there is none. If several classes in the hierarchy declare a
+   *         field with that name, this is the one declared by the most derived class, which shadows
+   *         the others; the shadowed fields can still be found with {@link #slotOf(Field)}.
+   */
+  public int slotOf(String name) {
+    return names.get(name);
+  }
+
+  /** @return The seeds of the plan's name index, or null if it doesn't have any. */
+  @Nullable
+  int[] getNameSeeds() {
+    return names.getSeeds();
+  }
+
+  /**
+   * @return The backend that a {@link PlanArchive} recorded for the planned class, or null if
+   *         there's no archived plan for it or none recorded a backend.
+   */
+  @Nullable
+  Backend getArchivedBackend() {
+    return archivedBackend;
+  }
+
+  /**
+   * @return The plan for the class declaring {@code field}, in which {@code field} is guaranteed to
+   *         have a slot if it's non-static.
+   */
+  public static ClassPlan ofDeclaringClass(Field field) {
+    return of(field.getDeclaringClass());
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+
+import javax.annotation.Nullable;
+
+/**
+ * Column-oriented input for {@link ReflectiveBuilder#buildAll(int, ColumnSource)}: each column
+ * supplies one field's value for every row, and each row becomes one built instance.
+ *
+ * <p>May be read from several threads at once when a batch is split across a
+ * {@link java.util.concurrent.ForkJoinPool}.
+ *
+ * @author cryoc
+ */
+public interface ColumnSource {
+
+  int getColumnCount();
+
+  /** @return The field that the given column supplies values for. */
+  Field getField(int column);
+
+  /**
+   * Called only for columns whose field isn't primitive. The value is type-checked by the builder.
+   *
+   * @return The value of the given column in the given row.
+   */
+  @Nullable
+  Object getValue(int column, int row);
+
+  /**
+   * Called only for columns whose field is primitive. The value isn't type-checked, so it must
+   * already be of the field's own type.
+   *
+   * @return The value of the given column in the given row, encoded as by
+   *         {@link ReflectiveBuilder#toBits(int, Object)} for the field's {@link ClassPlan} kind.
+   */
+  long getBits(int column, int row);
+}
@@ -0,0 +1,58 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+/**
+ * How a {@link ReflectiveBuilder} protects its configured field values from concurrent access, and
+ * whether it holds a source object's monitor while reading the source's fields in
+ * {@link ReflectiveBuilder#clone(Object)} and the like. Where it does, it takes the monitor once
+ * per source object rather than once per field.
+ *
+ * <p>Only {@link #MONITOR} and {@link #COPY_ON_WRITE} use monitors, which a virtual thread can't
+ * release while it's blocked, so the other policies suit builders used from virtual threads. They
+ * also don't lock source objects, so they never contend with application code that does; a source
+ * that's changed while it's being copied may be copied inconsistently.
+ *
+ * @author cryoc
+ */
+public enum ConcurrencyPolicy {
+  /**
+   * Setters, {@link ReflectiveBuilder#build()} and {@link ReflectiveBuilder#compile()} all hold the
+   * builder's monitor. The cheapest choice when the builder isn't shared between threads.
+   */
+  MONITOR(true),
+
+  /**
+   * The configured values are an immutable snapshot, which setters replace by compare-and-set with
+   * an updated copy. {@link ReflectiveBuilder#build()} and {@link ReflectiveBuilder#compile()} read
+   * the current snapshot without locking, so they always see a consistent state and never block or
+   * are blocked by setters. Setters never block each other either, but each one copies the
+   * builder's values, and retries if another setter changes them first.
+   */
+  COPY_ON_WRITE(true),
+
+  /**
+   * Like {@link #MONITOR}, but with a {@link java.util.concurrent.locks.ReentrantLock}, which
+   * doesn't pin a virtual thread to its carrier while it waits.
+   */
+  REENTRANT_LOCK(false),
+
+  /**
+   * Setters hold the write lock of a {@link java.util.concurrent.locks.StampedLock}.
+   * {@link ReflectiveBuilder#build()} copies the configured values under an optimistic read, and
+   * only takes the read lock if a setter ran meanwhile, so concurrent builds never block each other
+   * and rarely block at all.
+   */
+  STAMPED(false),
+
+  /**
+   * No locking at all. The builder must only be used by one thread at a time, or only built from
+   * once every thread has finished configuring it.
+   */
+  UNSYNCHRONIZED(false);
+
+  /** Whether source objects' monitors are held while their fields are read. */
+  final boolean locksSources;
+
+  ConcurrencyPolicy(boolean locksSources) {
+    this.locksSources = locksSources;
+  }
+}
@@ -16,7 +16,12 @@ public class ConstructingBuilder<T> extends TypeCheckedReflectiveBuilder<T> {
   protected final Object[] ctorParams;
 
   public ConstructingBuilder(Class<T> clazz, Constructor<T> constructor) {
-    super(clazz);
+    this(clazz, constructor, ConcurrencyPolicy.MONITOR);
+  }
+
+  public ConstructingBuilder(Class<T> clazz, Constructor<T> constructor,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, concurrencyPolicy);
     this.constructor = constructor;
     ctorParamTypes = constructor.getParameterTypes();
     ctorParams = new Object[ctorParamTypes.length];
@@ -37,8 +42,18 @@ public class ConstructingBuilder<T> extends TypeCheckedReflectiveBuilder<T> {
 
   @Override
   protected T allocateInstance() {
+    return allocateInstance(ctorParams);
+  }
+
+  @Override
+  protected Object snapshotAllocationState() {
+    return ctorParams.clone();
+  }
+
+  @Override
+  protected T allocateInstance(Object allocationState) {
     try {
-      return constructor.newInstance((Object[]) ctorParams);
+      return constructor.newInstance((Object[]) allocationState);
     } catch (InstantiationException | IllegalAccessException | IllegalArgumentException
         | InvocationTargetException e)
     {
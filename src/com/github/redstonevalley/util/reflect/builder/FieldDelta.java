@@ -0,0 +1,88 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The fields that differ between two instances of a class, and their new values, created by
+ * {@link ReflectiveBuilder#diff(Object, Object)}. The changed fields are a bitmap over the slots of
+ * the class's {@link ClassPlan}; the new values of reference fields and the raw bits of primitive
+ * ones are kept in slot order, holding only the changed fields. A delta is immutable, and holds no
+ * {@link Field}s, so it can be written with
+ * {@link com.github.redstonevalley.util.reflect.builder.sun.SnapshotEncoder} to ship it to another
+ * process.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class whose instances were compared.
+ */
+public final class FieldDelta<T> {
+  final Class<T> clazz;
+
+  /** Bit {@code slot % 64} of word {@code slot / 64} is set if that slot changed. */
+  final long[] changed;
+
+  /** The new values of the changed reference fields, in slot order. */
+  final Object[] values;
+
+  /**
+   * The new values of the changed primitive fields, in slot order, encoded as by
+   * {@link ReflectiveBuilder#toBits(int, Object)}.
+   */
+  final long[] bits;
+
+  FieldDelta(Class<T> clazz, long[] changed, Object[] values, long[] bits) {
+    this.clazz = clazz;
+    this.changed = changed;
+    this.values = values;
+    this.bits = bits;
+  }
+
+  /** @return The class whose instances were compared. */
+  public Class<T> getDeltaClass() {
+    return clazz;
+  }
+
+  /** @return Whether no fields changed. */
+  public boolean isEmpty() {
+    return values.length == 0 && bits.length == 0;
+  }
+
+  /** @return The number of fields that changed. */
+  public int getChangedFieldCount() {
+    return values.length + bits.length;
+  }
+
+  /** @return The fields that changed, in slot order. */
+  public List<Field> getChangedFields() {
+    ClassPlan plan = ClassPlan.of(clazz);
+    List<Field> fields = new ArrayList<>(getChangedFieldCount());
+    for (int slot = nextChangedSlot(0); slot >= 0; slot = nextChangedSlot(slot + 1)) {
+      fields.add(plan.getField(slot));
+    }
+    return fields;
+  }
+
+  /** @return Whether {@code field} changed. */
+  public boolean isChanged(Field field) {
+    int slot = ClassPlan.of(clazz).slotOf(field);
+    return slot >= 0 && (changed[slot >>> 6] & (1L << slot)) != 0;
+  }
+
+  /** @return The first changed slot at or after {@code from}, or -1 if there is none. */
+  int nextChangedSlot(int from) {
+    int word = from >>> 6;
+    if (word >= changed.length) {
+      return -1;
+    }
+    long remaining = changed[word] & (-1L << from);
+    while (remaining == 0) {
+      if (++word == changed.length) {
+        return -1;
+      }
+      remaining = changed[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(remaining);
+  }
+}
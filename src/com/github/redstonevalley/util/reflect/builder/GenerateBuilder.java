@@ -0,0 +1,20 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks the ReflectiveBuilder annotation processor to generate a {@link PrecompiledBuilder} for the
+ * annotated class at compile time, which {@link ReflectiveBuilders#forClass(Class)} then uses in
+ * preference to any reflective backend. The class must be a top-level or static nested class that
+ * isn't abstract, and must have a no-argument constructor that isn't private.
+ *
+ * @author cryoc
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateBuilder {}
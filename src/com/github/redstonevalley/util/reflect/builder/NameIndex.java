@@ -0,0 +1,168 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable map from field names to slots, stored as a minimal perfect hash: each name has a
+ * position of its own in a table exactly as long as the number of names, found with one probe after
+ * looking up the seed of the name's bucket. Lookups use only {@link String#hashCode()}, which
+ * strings cache, and one {@link String#equals(Object)}, so they don't allocate.
+ *
+ * <p>If no seed can be found for some bucket, as when two names have the same hash code, this falls
+ * back to a {@link HashMap}.
+ *
+ * @author cryoc
+ */
+final class NameIndex {
+
+  /** The most seeds to try for one bucket before falling back to a {@link HashMap}. */
+  private static final int MAX_SEED = 1 << 16;
+
+  private final String[] names;
+  private final int[] slots;
+  private final int[] seeds;
+  private final HashMap<String, Integer> fallback;
+
+  /** @param slotsByName Each name and its slot. */
+  NameIndex(Map<String, Integer> slotsByName) {
+    this(slotsByName, null);
+  }
+
+  /**
+   * @param slotsByName Each name and its slot.
+   * @param knownSeeds Seeds from {@link #getSeeds()} of an earlier index, which are used instead of
+   *          searching for new ones if they put every name into a position of its own.
+   */
+  NameIndex(Map<String, Integer> slotsByName, @Nullable int[] knownSeeds) {
+    int size = slotsByName.size();
+    String[] keys = slotsByName.keySet().toArray(new String[size]);
+    names = new String[size];
+    slots = new int[size];
+    seeds = new int[Math.max(size, 1)];
+    if ((knownSeeds != null && reuse(keys, knownSeeds)) || place(keys)) {
+      for (int position = 0; position < size; position++) {
+        slots[position] = slotsByName.get(names[position]);
+      }
+      fallback = null;
+    } else {
+      fallback = new HashMap<>(slotsByName);
+    }
+  }
+
+  /**
+   * Assigns each key the position that {@code knownSeeds} gives it in {@link #names}.
+   *
+   * @return false, leaving {@link #names} empty, if two keys have the same position.
+   */
+  private boolean reuse(String[] keys, int[] knownSeeds) {
+    if (knownSeeds.length != seeds.length) {
+      return false;
+    }
+    for (String key : keys) {
+      int hash = key.hashCode();
+      int position = index(hash, knownSeeds[index(hash, 0, seeds.length)], names.length);
+      if (names[position] != null) {
+        Arrays.fill(names, null);
+        return false;
+      }
+      names[position] = key;
+    }
+    System.arraycopy(knownSeeds, 0, seeds, 0, seeds.length);
+    return true;
+  }
+
+  /**
+   * Assigns each key a position in {@link #names}, choosing a seed for each bucket of keys in
+   * descending order of bucket size.
+   *
+   * @return false if some bucket has no seed that puts all its keys into free positions.
+   */
+  private boolean place(String[] keys) {
+    int size = keys.length;
+    ArrayList<ArrayList<String>> buckets = new ArrayList<>();
+    for (int bucket = 0; bucket < seeds.length; bucket++) {
+      buckets.add(new ArrayList<String>());
+    }
+    for (String key : keys) {
+      buckets.get(index(key.hashCode(), 0, seeds.length)).add(key);
+    }
+    Integer[] order = new Integer[seeds.length];
+    for (int bucket = 0; bucket < order.length; bucket++) {
+      order[bucket] = bucket;
+    }
+    Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+    int[] positions = new int[size];
+    for (int bucket : order) {
+      ArrayList<String> members = buckets.get(bucket);
+      if (members.isEmpty()) {
+        break;
+      }
+      int seed = 1;
+      while (!fits(members, seed, positions)) {
+        if (++seed > MAX_SEED) {
+          return false;
+        }
+      }
+      seeds[bucket] = seed;
+      for (int i = 0; i < members.size(); i++) {
+        names[positions[i]] = members.get(i);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return Whether {@code seed} puts every member into a distinct free position, which are then
+   *         left in {@code positions}.
+   */
+  private boolean fits(ArrayList<String> members, int seed, int[] positions) {
+    for (int i = 0; i < members.size(); i++) {
+      int position = index(members.get(i).hashCode(), seed, names.length);
+      if (names[position] != null) {
+        return false;
+      }
+      for (int j = 0; j < i; j++) {
+        if (positions[j] == position) {
+          return false;
+        }
+      }
+      positions[i] = position;
+    }
+    return true;
+  }
+
+  private static int index(int hash, int seed, int length) {
+    int mixed = hash ^ (seed * 0x9E3779B9);
+    mixed ^= mixed >>> 16;
+    mixed *= 0x85EBCA6B;
+    mixed ^= mixed >>> 13;
+    mixed *= 0xC2B2AE35;
+    mixed ^= mixed >>> 16;
+    return (mixed & Integer.MAX_VALUE) % length;
+  }
+
+  /** @return A copy of the seeds of each bucket, or null if this fell back to a map. */
+  @Nullable
+  int[] getSeeds() {
+    return fallback == null ? seeds.clone() : null;
+  }
+
+  /** @return The slot of the field named {@code name}, or -1 if there is none. */
+  int get(String name) {
+    if (fallback != null) {
+      Integer slot = fallback.get(name);
+      return slot == null ? -1 : slot;
+    }
+    if (names.length == 0) {
+      return -1;
+    }
+    int hash = name.hashCode();
+    int position = index(hash, seeds[index(hash, 0, seeds.length)], names.length);
+    return name.equals(names[position]) ? slots[position] : -1;
+  }
+}
@@ -0,0 +1,286 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilders.Backend;
+
+/**
+ * A resource, {@value #RESOURCE}, that records the {@link ClassPlan}s of a list of classes and the
+ * backends that {@link ReflectiveBuilders} chose for them, so that a process can skip that work
+ * when it first builds them. It's written at build time, by {@link #main(String[])} or
+ * {@link #write(Collection, OutputStream)}, into the output of the module whose classes it lists.
+ *
+ * <p>Every archive that a class's class loader can find is read the first time a plan is needed for
+ * a class from that loader. An archived plan is only used if the class's non-static fields and
+ * superclass still have the recorded names and types, which is checked against the fields that the
+ * plan has to look up anyway. A plan then reuses the recorded seeds of its {@link NameIndex} rather
+ * than searching for new ones, and {@link ReflectiveBuilders} tries only the recorded backend, and
+ * doesn't calibrate, unless that backend can't build the class in this process. Classes that aren't
+ * in any archive, have changed since it was written, or are in an archive that can't be read or is
+ * damaged, are planned as usual.
+ *
+ * @author cryoc
+ */
+public final class PlanArchive {
+
+  /** The name of the resource that archives are read from. */
+  public static final String RESOURCE = "META-INF/reflective-builder/plans.bin";
+
+  private static final int MAGIC = 0x52425041;
+  private static final int VERSION = 1;
+
+  /** The most classes, or fields or seeds of one class, that an archive is trusted to hold. */
+  private static final int MAX_COUNT = 1 << 20;
+
+  /** The archived plans that each class loader can find, by class name. */
+  private static final Map<ClassLoader, Map<String, Entry>> LOADED = new WeakHashMap<>();
+
+  /** One archived class. */
+  static final class Entry {
+    final String superclassName;
+    final String[] fieldNames;
+    final String[] fieldTypes;
+    @Nullable
+    final int[] seeds;
+    @Nullable
+    final String backendName;
+
+    Entry(String superclassName, String[] fieldNames, String[] fieldTypes,
+        @Nullable int[] seeds, @Nullable String backendName) {
+      this.superclassName = superclassName;
+      this.fieldNames = fieldNames;
+      this.fieldTypes = fieldTypes;
+      this.seeds = seeds;
+      this.backendName = backendName;
+    }
+
+    /**
+     * @return Whether this entry describes {@code clazz}, given the fields of its plan, of which
+     *         those from {@code inheritedSize} on are declared by {@code clazz} itself.
+     */
+    boolean describes(Class<?> clazz, Field[] fields, int inheritedSize) {
+      if (!superclassName.equals(superclassName(clazz))
+          || fieldNames.length != fields.length - inheritedSize) {
+        return false;
+      }
+      for (int i = 0; i < fieldNames.length; i++) {
+        Field field = fields[inheritedSize + i];
+        if (!fieldNames[i].equals(field.getName())
+            || !fieldTypes[i].equals(field.getType().getName())) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** @return The recorded backend, or null if none was or this library no longer has it. */
+    @Nullable
+    Backend backend() {
+      if (backendName == null) {
+        return null;
+      }
+      try {
+        return Backend.valueOf(backendName);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+  }
+
+  private PlanArchive() {}
+
+  /**
+   * Writes an archive of the given classes and their superclasses to {@value #RESOURCE} under a
+   * directory, creating it if need be.
+   *
+   * @param args The directory, such as a module's {@code target/classes}, followed by the names of
+   *          the classes to archive, which are loaded by the context class loader.
+   */
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    if (args.length < 1) {
+      System.err.println("Usage: PlanArchive <output directory> <class name>...");
+      System.exit(2);
+    }
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    List<Class<?>> classes = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      classes.add(Class.forName(args[i], false, loader));
+    }
+    Path file = Paths.get(args[0]).resolve(RESOURCE);
+    Files.createDirectories(file.getParent());
+    try (OutputStream out = Files.newOutputStream(file)) {
+      write(classes, out);
+    }
+  }
+
+  /**
+   * Writes an archive of {@code classes} and their superclasses to {@code out}, planning them and
+   * choosing their backends in this process if that hasn't been done already. Array and primitive
+   * classes are skipped, and so is {@link Object}. {@code out} isn't closed.
+   */
+  public static void write(Collection<Class<?>> classes, OutputStream out) throws IOException {
+    LinkedHashSet<Class<?>> archived = new LinkedHashSet<>();
+    for (Class<?> clazz : classes) {
+      for (Class<?> type = clazz; type != null && !type.equals(Object.class);
+          type = type.getSuperclass()) {
+        if (type.isArray() || type.isPrimitive()) {
+          break;
+        }
+        archived.add(type);
+      }
+    }
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(archived.size());
+    for (Class<?> clazz : archived) {
+      ClassPlan plan = ClassPlan.of(clazz);
+      data.writeUTF(clazz.getName());
+      data.writeUTF(superclassName(clazz));
+      data.writeInt(plan.size() - plan.getInheritedSize());
+      for (int slot = plan.getInheritedSize(); slot < plan.size(); slot++) {
+        data.writeUTF(plan.getField(slot).getName());
+        data.writeUTF(plan.getField(slot).getType().getName());
+      }
+      int[] seeds = plan.getNameSeeds();
+      data.writeInt(seeds == null ? -1 : seeds.length);
+      if (seeds != null) {
+        for (int seed : seeds) {
+          data.writeInt(seed);
+        }
+      }
+      Backend backend;
+      try {
+        backend = ReflectiveBuilders.backendFor(clazz);
+      } catch (IllegalArgumentException e) {
+        backend = null;
+      }
+      data.writeUTF(backend == null ? "" : backend.name());
+    }
+    data.flush();
+  }
+
+  /**
+   * @return The archived plan of {@code clazz}, which may no longer describe it, or null if no
+   *         readable archive on its class loader has one.
+   */
+  @Nullable
+  static Entry entryFor(Class<?> clazz) {
+    ClassLoader loader = clazz.getClassLoader();
+    if (loader == null || clazz.isArray()) {
+      return null;
+    }
+    Map<String, Entry> entries;
+    synchronized (LOADED) {
+      entries = LOADED.get(loader);
+    }
+    if (entries == null) {
+      // Read without the lock, so loaders don't wait for each other; if two threads race to read
+      // the same loader's archives, both read the same entries and the first to finish is kept.
+      Map<String, Entry> loaded = load(loader);
+      synchronized (LOADED) {
+        entries = LOADED.putIfAbsent(loader, loaded);
+      }
+      if (entries == null) {
+        entries = loaded;
+      }
+    }
+    return entries.get(clazz.getName());
+  }
+
+  /**
+   * @return The entries of every archive that {@code loader} can find, by class name. Archives
+   *         that can't be read or are damaged are skipped, so their classes are planned as usual.
+   */
+  private static Map<String, Entry> load(ClassLoader loader) {
+    Map<String, Entry> entries = new HashMap<>();
+    Enumeration<URL> resources;
+    try {
+      resources = loader.getResources(RESOURCE);
+    } catch (IOException e) {
+      return Collections.emptyMap();
+    }
+    while (resources.hasMoreElements()) {
+      Map<String, Entry> archive = new HashMap<>();
+      try (InputStream in = resources.nextElement().openStream()) {
+        read(new DataInputStream(new BufferedInputStream(in)), archive);
+      } catch (IOException | RuntimeException e) {
+        continue;
+      }
+      for (Map.Entry<String, Entry> entry : archive.entrySet()) {
+        entries.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+    }
+    return entries.isEmpty() ? Collections.<String, Entry>emptyMap() : entries;
+  }
+
+  /**
+   * Adds the entries of one archive to {@code entries}, unless it was written by an incompatible
+   * version of this library.
+   *
+   * @throws IOException if the archive is truncated or its counts are out of range.
+   */
+  private static void read(DataInputStream in, Map<String, Entry> entries) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      return;
+    }
+    int count = readCount(in);
+    for (int i = 0; i < count; i++) {
+      String name = in.readUTF();
+      String superclassName = in.readUTF();
+      String[] fieldNames = new String[readCount(in)];
+      String[] fieldTypes = new String[fieldNames.length];
+      for (int field = 0; field < fieldNames.length; field++) {
+        fieldNames[field] = in.readUTF();
+        fieldTypes[field] = in.readUTF();
+      }
+      int seedCount = in.readInt();
+      int[] seeds = seedCount == -1 ? null : new int[checkCount(seedCount)];
+      for (int seed = 0; seed < seedCount; seed++) {
+        seeds[seed] = in.readInt();
+      }
+      String backendName = in.readUTF();
+      entries.putIfAbsent(name, new Entry(superclassName, fieldNames, fieldTypes, seeds,
+          backendName.isEmpty() ? null : backendName));
+    }
+  }
+
+  private static int readCount(DataInputStream in) throws IOException {
+    return checkCount(in.readInt());
+  }
+
+  /** @throws IOException if {@code count} is negative or more than {@link #MAX_COUNT}. */
+  private static int checkCount(int count) throws IOException {
+    if (count < 0 || count > MAX_COUNT) {
+      throw new IOException("Count out of range: " + count);
+    }
+    return count;
+  }
+
+  private static String superclassName(Class<?> clazz) {
+    Class<?> superclass = clazz.getSuperclass();
+    return superclass == null ? "" : superclass.getName();
+  }
+}
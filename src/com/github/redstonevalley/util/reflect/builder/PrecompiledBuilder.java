@@ -0,0 +1,61 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+
+/**
+ * The superclass of the builders that the ReflectiveBuilder annotation processor generates for
+ * classes annotated with {@link GenerateBuilder}. A generated builder calls T's no-argument
+ * constructor, and reads and writes T's fields with ordinary field accesses wherever Java's access
+ * rules allow it, falling back to this class's reflection for private and final fields.
+ *
+ * <p>The generated code addresses fields by their slot in T's {@link ClassPlan}, which the
+ * processor predicts from the order in which fields are declared, and which each generated builder
+ * checks with {@link #checkSlots} when it's initialized.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this builder builds.
+ */
+public abstract class PrecompiledBuilder<T> extends TypeCheckedReflectiveBuilder<T> {
+
+  /** Appended to the name of an annotated class to name its generated builder. */
+  public static final String SUFFIX = "_ReflectiveBuilder";
+
+  protected PrecompiledBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, concurrencyPolicy);
+  }
+
+  /**
+   * @return The binary name of the generated builder for {@code clazz}: in the same package, with
+   *         {@code $} replaced by {@code _} in the names of nested classes, and {@link #SUFFIX}
+   *         appended.
+   */
+  public static String builderClassName(Class<?> clazz) {
+    String name = clazz.getName();
+    int simpleNameStart = name.lastIndexOf('.') + 1;
+    return name.substring(0, simpleNameStart)
+        + name.substring(simpleNameStart).replace('$', '_')
+        + SUFFIX;
+  }
+
+  /**
+   * Checks that each slot of {@code clazz}'s {@link ClassPlan} holds the field that generated code
+   * expects. The declaring classes are given by their binary names, since they needn't be
+   * accessible to the generated code.
+   *
+   * @throws IllegalStateException if it doesn't, in which case the builder must not be used.
+   */
+  protected static void checkSlots(Class<?> clazz, String[] declaringClasses, String[] names) {
+    ClassPlan plan = ClassPlan.of(clazz);
+    boolean matches = plan.size() == names.length;
+    for (int slot = 0; matches && slot < names.length; slot++) {
+      Field field = plan.getField(slot);
+      matches = field.getDeclaringClass().getName().equals(declaringClasses[slot])
+          && field.getName().equals(names[slot]);
+    }
+    if (!matches) {
+      throw new IllegalStateException(
+          String.format("The fields of %s don't match its generated builder", clazz));
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Maps fixed-size binary records onto instances of T. Each {@link RecordField} gives the byte
+ * offset within a record and the byte order of one primitive field of T, which is encoded with the
+ * field's own type: one byte for a {@code boolean} (nonzero is true) or {@code byte}, two for a
+ * {@code short} or {@code char}, and so on. Each record is decoded straight into a new instance
+ * through the builder's unboxed field writes, with no intermediate builder or boxed values.
+ *
+ * <p>Fields of T that aren't in the layout are set as they were configured in the builder when the
+ * layout was created, as by {@link ReflectiveBuilder#compile()}. A layout is immutable, and can
+ * read from any number of threads at once.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this layout builds.
+ */
+public final class RecordLayout<T> {
+
+  /** One field's place in a record. */
+  public static final class RecordField {
+    final Field field;
+    final int offset;
+    final ByteOrder order;
+
+    /**
+     * @param field A primitive field of T.
+     * @param offset The offset of the field's value from the start of each record.
+     * @param order The byte order of the field's value.
+     */
+    public RecordField(Field field, int offset, ByteOrder order) {
+      this.field = field;
+      this.offset = offset;
+      this.order = order;
+    }
+  }
+
+  private static final VarHandle SHORT_BE = view(short[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle SHORT_LE = view(short[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle CHAR_BE = view(char[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle CHAR_LE = view(char[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle INT_BE = view(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_LE = view(int[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle LONG_BE = view(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG_LE = view(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private static VarHandle view(Class<?> arrayClass, ByteOrder order) {
+    return MethodHandles.byteBufferViewVarHandle(arrayClass, order);
+  }
+
+  private final ReflectiveBuilder<T> builder;
+  private final BuildTemplate<T> template;
+  private final int recordSize;
+  private final Field[] fields;
+  private final long[] fieldOffsets;
+  private final int[] kinds;
+  private final int[] recordOffsets;
+  private final boolean[] bigEndian;
+
+  /**
+   * @param builder The builder whose backend writes the fields, and whose configuration supplies
+   *          the fields that aren't in the layout.
+   * @param recordSize The size of each record in bytes, including any padding.
+   * @param recordFields Where each field is in a record.
+   * @throws IllegalArgumentException if a field isn't a primitive field of T, or doesn't fit in a
+   *           record.
+   */
+  public RecordLayout(ReflectiveBuilder<T> builder, int recordSize, RecordField... recordFields) {
+    if (recordSize <= 0) {
+      throw new IllegalArgumentException("Record size must be positive: " + recordSize);
+    }
+    this.builder = builder;
+    this.recordSize = recordSize;
+    template = builder.compile();
+    long[] slotOffsets = builder.getSlotOffsets();
+    fields = new Field[recordFields.length];
+    fieldOffsets = new long[recordFields.length];
+    kinds = new int[recordFields.length];
+    recordOffsets = new int[recordFields.length];
+    bigEndian = new boolean[recordFields.length];
+    for (int i = 0; i < recordFields.length; i++) {
+      RecordField recordField = recordFields[i];
+      int slot = builder.plan.slotOf(recordField.field);
+      if (slot < 0 || builder.plan.getKind(slot) == ClassPlan.KIND_OBJECT) {
+        throw new IllegalArgumentException(String.format(
+            "%s isn't a primitive field of %s", recordField.field, builder.clazz));
+      }
+      int kind = builder.plan.getKind(slot);
+      if (recordField.offset < 0 || recordField.offset + width(kind) > recordSize) {
+        throw new IllegalArgumentException(String.format(
+            "%s at offset %d doesn't fit in a %d-byte record",
+            recordField.field, recordField.offset, recordSize));
+      }
+      fields[i] = builder.plan.getField(slot);
+      fieldOffsets[i] = slotOffsets[slot];
+      kinds[i] = kind;
+      recordOffsets[i] = recordField.offset;
+      bigEndian[i] = recordField.order == ByteOrder.BIG_ENDIAN;
+    }
+  }
+
+  /** @return The number of bytes that a field of the given {@link ClassPlan} kind occupies. */
+  private static int width(int kind) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+      case ClassPlan.KIND_BYTE:
+        return 1;
+      case ClassPlan.KIND_SHORT:
+      case ClassPlan.KIND_CHAR:
+        return 2;
+      case ClassPlan.KIND_INT:
+      case ClassPlan.KIND_FLOAT:
+        return 4;
+      default:
+        return 8;
+    }
+  }
+
+  /** @return The size of each record in bytes. */
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  /**
+   * @return A new instance built from the record that starts at absolute index {@code index} of
+   *         {@code buffer}. The buffer's position isn't used or changed.
+   * @throws IndexOutOfBoundsException if the record doesn't end before the buffer's limit.
+   */
+  public T read(ByteBuffer buffer, int index) {
+    if (index < 0 || index > buffer.limit() - recordSize) {
+      throw new IndexOutOfBoundsException(String.format(
+          "Record at %d doesn't fit in a buffer limited to %d bytes", index, buffer.limit()));
+    }
+    T built = template.newInstance();
+    for (int i = 0; i < fields.length; i++) {
+      builder.putPrimitive(built, fields[i], fieldOffsets[i], kinds[i],
+          readBits(buffer, index + recordOffsets[i], kinds[i], bigEndian[i]));
+    }
+    return built;
+  }
+
+  /**
+   * @return The value at {@code index}, encoded as by {@link ReflectiveBuilder#toBits}. Each case
+   *         uses a constant {@link VarHandle}, so the JIT can inline it.
+   */
+  private static long readBits(ByteBuffer buffer, int index, int kind, boolean bigEndian) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        return buffer.get(index) != 0 ? 1 : 0;
+      case ClassPlan.KIND_BYTE:
+        return buffer.get(index);
+      case ClassPlan.KIND_SHORT:
+        return bigEndian
+            ? (short) SHORT_BE.get(buffer, index)
+            : (short) SHORT_LE.get(buffer, index);
+      case ClassPlan.KIND_CHAR:
+        return bigEndian ? (char) CHAR_BE.get(buffer, index) : (char) CHAR_LE.get(buffer, index);
+      case ClassPlan.KIND_INT:
+      case ClassPlan.KIND_FLOAT:
+        return bigEndian ? (int) INT_BE.get(buffer, index) : (int) INT_LE.get(buffer, index);
+      default:
+        return bigEndian ? (long) LONG_BE.get(buffer, index) : (long) LONG_LE.get(buffer, index);
+    }
+  }
+
+  /**
+   * @return The records from {@code buffer}'s position up to its limit, as a stream that can be
+   *         run in parallel. A partial record at the end is ignored. The buffer's position and
+   *         limit aren't changed, but its contents mustn't be while the stream is running.
+   */
+  public Stream<T> stream(ByteBuffer buffer) {
+    int start = buffer.position();
+    int count = buffer.remaining() / recordSize;
+    return IntStream.range(0, count).mapToObj(record -> read(buffer, start + record * recordSize));
+  }
+
+  /**
+   * @return The records in {@code channel}, which is mapped read-only in regions of up to 2GB
+   *         that each hold a whole number of records. A partial record at the end is ignored.
+   * @throws UncheckedIOException if the channel can't be mapped.
+   */
+  public Stream<T> stream(FileChannel channel) {
+    long size;
+    try {
+      size = channel.size();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    long recordsPerRegion = Integer.MAX_VALUE / recordSize;
+    long regionSize = recordsPerRegion * recordSize;
+    long regions = (size / recordSize + recordsPerRegion - 1) / recordsPerRegion;
+    return LongStream.range(0, regions).mapToObj(region -> {
+      long regionStart = region * regionSize;
+      long length = Math.min(regionSize, size - regionStart);
+      try {
+        return channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }).flatMap(this::stream);
+  }
+}
@@ -1,12 +1,24 @@
 package com.github.redstonevalley.util.reflect.builder;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 import javax.annotation.Nullable;
 
+import com.github.redstonevalley.util.reflect.builder.metrics.BuilderMetrics.Operation;
+import com.github.redstonevalley.util.reflect.builder.metrics.Instrumentation;
+
 /**
  * A builder that uses reflection, and therefore can be applied to classes that don't define a
  * builder class of their own.
@@ -16,10 +28,119 @@ import javax.annotation.Nullable;
  * @param <T> The class that this builder builds.
  */
 public abstract class ReflectiveBuilder<T> {
-  protected final HashMap<Field, Object> fieldValues = new HashMap<>();
-  protected final HashSet<Field> explicitlyNullFields = new HashSet<>();
   protected final Class<T> clazz;
+  protected final ClassPlan plan;
   protected final boolean allowsTypePunning;
+  protected final ConcurrencyPolicy concurrencyPolicy;
+
+  /**
+   * The configured field values. Under {@link ConcurrencyPolicy#MONITOR}, changed in place while
+   * holding this builder's lock; under {@link ConcurrencyPolicy#COPY_ON_WRITE}, never changed once
+   * assigned, but replaced through {@link #SLOTS}.
+   */
+  private volatile SlotValues slots;
+  private volatile long[] slotOffsets;
+
+  /** Guards {@link #slots} under {@link ConcurrencyPolicy#REENTRANT_LOCK}; null otherwise. */
+  @Nullable
+  private final ReentrantLock reentrantLock;
+
+  /** Guards {@link #slots} under {@link ConcurrencyPolicy#STAMPED}; null otherwise. */
+  @Nullable
+  private final StampedLock stampedLock;
+
+  /** Which slots hold arrays that are copied rather than shared, or null if none are. */
+  private volatile boolean[] arrayCopySlots;
+
+  private static final VarHandle SLOTS;
+  private static final VarHandle ARRAY_COPY_SLOTS;
+
+  static {
+    try {
+      SLOTS = MethodHandles.lookup()
+          .findVarHandle(ReflectiveBuilder.class, "slots", SlotValues.class);
+      ARRAY_COPY_SLOTS = MethodHandles.lookup()
+          .findVarHandle(ReflectiveBuilder.class, "arrayCopySlots", boolean[].class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * {@code WIDENS[valueKind][fieldKind]} is whether a primitive of {@code valueKind} can be assigned
+   * to a field of {@code fieldKind}, under the same rules as
+   * {@link #isReallyAssignableFrom(Class, Object)}.
+   */
+  private static final boolean[][] WIDENS = new boolean[ClassPlan.KIND_OBJECT + 1][];
+
+  static {
+    WIDENS[ClassPlan.KIND_BOOLEAN] = kinds(ClassPlan.KIND_BOOLEAN);
+    WIDENS[ClassPlan.KIND_BYTE] = kinds(ClassPlan.KIND_BYTE, ClassPlan.KIND_SHORT,
+        ClassPlan.KIND_CHAR, ClassPlan.KIND_INT, ClassPlan.KIND_LONG);
+    WIDENS[ClassPlan.KIND_SHORT] =
+        kinds(ClassPlan.KIND_SHORT, ClassPlan.KIND_INT, ClassPlan.KIND_LONG);
+    WIDENS[ClassPlan.KIND_CHAR] =
+        kinds(ClassPlan.KIND_CHAR, ClassPlan.KIND_INT, ClassPlan.KIND_LONG);
+    WIDENS[ClassPlan.KIND_INT] = kinds(ClassPlan.KIND_INT, ClassPlan.KIND_LONG);
+    WIDENS[ClassPlan.KIND_LONG] = kinds(ClassPlan.KIND_LONG);
+    WIDENS[ClassPlan.KIND_FLOAT] = kinds(ClassPlan.KIND_FLOAT, ClassPlan.KIND_DOUBLE);
+    WIDENS[ClassPlan.KIND_DOUBLE] = kinds(ClassPlan.KIND_DOUBLE);
+    WIDENS[ClassPlan.KIND_OBJECT] = kinds(ClassPlan.KIND_OBJECT);
+  }
+
+  private static boolean[] kinds(int... kinds) {
+    boolean[] result = new boolean[ClassPlan.KIND_OBJECT + 1];
+    for (int kind : kinds) {
+      result[kind] = true;
+    }
+    return result;
+  }
+
+  /**
+   * {@code VERDICTS.get(fieldType).get(valueClass)} is whether a non-null instance of
+   * {@code valueClass} can be assigned to a field of {@code fieldType}. Computed once per pair of
+   * classes, so a check in the steady state is a lookup rather than a chain of comparisons.
+   */
+  private static final ClassValue<ClassValue<Boolean>> VERDICTS =
+      new ClassValue<ClassValue<Boolean>>() {
+        @Override
+        protected ClassValue<Boolean> computeValue(Class<?> fieldType) {
+          int fieldKind = ClassPlan.kindOf(fieldType);
+          return new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> valueClass) {
+              return fieldKind == ClassPlan.KIND_OBJECT
+                  ? fieldType.isAssignableFrom(valueClass)
+                  : WIDENS[boxedKindOf(valueClass)][fieldKind];
+            }
+          };
+        }
+      };
+
+  /**
+   * @return The {@link ClassPlan} kind of the primitive that {@code valueClass} boxes, or
+   *         {@link ClassPlan#KIND_OBJECT} if it isn't a box.
+   */
+  private static int boxedKindOf(Class<?> valueClass) {
+    if (valueClass == Boolean.class) {
+      return ClassPlan.KIND_BOOLEAN;
+    } else if (valueClass == Byte.class) {
+      return ClassPlan.KIND_BYTE;
+    } else if (valueClass == Short.class) {
+      return ClassPlan.KIND_SHORT;
+    } else if (valueClass == Character.class) {
+      return ClassPlan.KIND_CHAR;
+    } else if (valueClass == Integer.class) {
+      return ClassPlan.KIND_INT;
+    } else if (valueClass == Long.class) {
+      return ClassPlan.KIND_LONG;
+    } else if (valueClass == Float.class) {
+      return ClassPlan.KIND_FLOAT;
+    } else if (valueClass == Double.class) {
+      return ClassPlan.KIND_DOUBLE;
+    }
+    return ClassPlan.KIND_OBJECT;
+  }
 
   /**
    * @return Whether {@code value} can be assigned to a field of type {@code clazz}, taking into
@@ -27,39 +148,211 @@ public abstract class ReflectiveBuilder<T> {
    *         be null.
    */
   protected static boolean isReallyAssignableFrom(Class<?> clazz, @Nullable Object value) {
-    if (clazz.equals(byte.class)) {
-      return value != null && value instanceof Byte;
-    } else if (clazz.equals(short.class)) {
-      return value != null && (value instanceof Byte || value instanceof Short);
-    } else if (clazz.equals(char.class)) {
-      return value != null && (value instanceof Byte || value instanceof Character);
-    } else if (clazz.equals(int.class)) {
-      return value != null
-          && (value instanceof Byte
-              || value instanceof Short
-              || value instanceof Character
-              || value instanceof Integer);
-    } else if (clazz.equals(long.class)) {
-      return value != null
-          && (value instanceof Byte
-              || value instanceof Short
-              || value instanceof Character
-              || value instanceof Integer
-              || value instanceof Long);
-    } else if (clazz.equals(boolean.class)) {
-      return value != null && value instanceof Boolean;
-    } else if (clazz.equals(float.class)) {
-      return value != null && value instanceof Float;
-    } else if (clazz.equals(double.class)) {
-      return value != null && (value instanceof Float || value instanceof Double);
-    } else {
-      return value == null || clazz.isInstance(value);
+    if (value == null) {
+      return !clazz.isPrimitive();
     }
+    return VERDICTS.get(clazz).get(value.getClass());
   }
 
   protected ReflectiveBuilder(Class<T> clazz, boolean allowsTypePunning) {
+    this(clazz, allowsTypePunning, ConcurrencyPolicy.MONITOR);
+  }
+
+  protected ReflectiveBuilder(Class<T> clazz, boolean allowsTypePunning,
+      ConcurrencyPolicy concurrencyPolicy) {
     this.clazz = clazz;
+    this.plan = ClassPlan.of(clazz);
+    this.slots = new SlotValues(plan.size());
     this.allowsTypePunning = allowsTypePunning;
+    this.concurrencyPolicy = concurrencyPolicy;
+    reentrantLock =
+        concurrencyPolicy == ConcurrencyPolicy.REENTRANT_LOCK ? new ReentrantLock() : null;
+    stampedLock = concurrencyPolicy == ConcurrencyPolicy.STAMPED ? new StampedLock() : null;
+  }
+
+  /** A change to a builder's configured values. */
+  private interface SlotUpdate {
+    /** @return A result for the caller of {@link ReflectiveBuilder#update(SlotUpdate)}. */
+    boolean apply(SlotValues values);
+  }
+
+  /** Applies {@code update} to the configured values, as {@link #concurrencyPolicy} requires. */
+  private boolean update(SlotUpdate update) {
+    switch (concurrencyPolicy) {
+      case MONITOR: {
+        long lockStart = Instrumentation.start();
+        synchronized (this) {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return update.apply(slots);
+        }
+      }
+      case REENTRANT_LOCK: {
+        long lockStart = Instrumentation.start();
+        reentrantLock.lock();
+        try {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return update.apply(slots);
+        } finally {
+          reentrantLock.unlock();
+        }
+      }
+      case STAMPED: {
+        long lockStart = Instrumentation.start();
+        long stamp = stampedLock.writeLock();
+        try {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return update.apply(slots);
+        } finally {
+          stampedLock.unlockWrite(stamp);
+        }
+      }
+      case UNSYNCHRONIZED:
+        return update.apply(slots);
+      default:
+        break;
+    }
+    while (true) {
+      long attemptStart = Instrumentation.start();
+      SlotValues current = slots;
+      SlotValues next = current.copy();
+      boolean result = update.apply(next);
+      if (SLOTS.compareAndSet(this, current, next)) {
+        return result;
+      }
+      if (Instrumentation.ENABLED) {
+        Instrumentation.record(clazz, Operation.RETRIED_UPDATE, attemptStart);
+      }
+    }
+  }
+
+  /** Reads a builder's configured values. */
+  protected interface SlotReader<R> {
+    R read(SlotValues configured);
+  }
+
+  /**
+   * @return The result of {@code reader}, which is called exactly once with the configured values
+   *         and, as {@link #concurrencyPolicy} requires, while holding this builder's lock. Under
+   *         {@link ConcurrencyPolicy#STAMPED}, that's a copy of the values made under an optimistic
+   *         read, or the values themselves under the read lock if a setter interfered.
+   */
+  protected final <R> R readConfigured(SlotReader<R> reader) {
+    switch (concurrencyPolicy) {
+      case MONITOR: {
+        long lockStart = Instrumentation.start();
+        synchronized (this) {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return reader.read(slots);
+        }
+      }
+      case REENTRANT_LOCK: {
+        long lockStart = Instrumentation.start();
+        reentrantLock.lock();
+        try {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return reader.read(slots);
+        } finally {
+          reentrantLock.unlock();
+        }
+      }
+      case STAMPED: {
+        long stamp = stampedLock.tryOptimisticRead();
+        if (stamp != 0) {
+          SlotValues copy = null;
+          try {
+            copy = slots.copy();
+          } catch (RuntimeException e) {
+            // A setter changed the values mid-copy; the stamp won't validate.
+          }
+          if (copy != null && stampedLock.validate(stamp)) {
+            return reader.read(copy);
+          }
+        }
+        long lockStart = Instrumentation.start();
+        stamp = stampedLock.readLock();
+        try {
+          if (Instrumentation.ENABLED) {
+            Instrumentation.lockAcquired(clazz, lockStart);
+          }
+          return reader.read(slots);
+        } finally {
+          stampedLock.unlockRead(stamp);
+        }
+      }
+      default:
+        return reader.read(slots);
+    }
+  }
+
+  /**
+   * @return The configured field values. Unless {@link #concurrencyPolicy} is
+   *         {@link ConcurrencyPolicy#COPY_ON_WRITE}, under which they're an immutable snapshot,
+   *         these may only be read from within {@link #readConfigured(SlotReader)}.
+   */
+  protected final SlotValues currentSlots() {
+    return slots;
+  }
+
+  /** @return Whether a source object's monitor must be held while its fields are read. */
+  protected final boolean locksSources() {
+    return concurrencyPolicy.locksSources;
+  }
+
+  /**
+   * @return The raw bits of a primitive value widened to the given {@link ClassPlan} kind, which
+   *         must already have been checked by {@link #isReallyAssignableFrom(Class, Object)}: 0 or
+   *         1 for booleans, {@link Float#floatToRawIntBits} and {@link Double#doubleToRawLongBits}
+   *         for floating-point values, the value itself for integral types, and the value
+   *         zero-extended for chars.
+   */
+  protected static long toBits(int kind, Object value) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        return (Boolean) value ? 1 : 0;
+      case ClassPlan.KIND_FLOAT:
+        return Float.floatToRawIntBits(((Number) value).floatValue());
+      case ClassPlan.KIND_DOUBLE:
+        return Double.doubleToRawLongBits(((Number) value).doubleValue());
+      case ClassPlan.KIND_CHAR:
+        // A byte widens to a char by sign extension, then truncation to 16 bits.
+        return value instanceof Character ? (Character) value : (char) ((Number) value).byteValue();
+      default:
+        return value instanceof Character ? (Character) value : ((Number) value).longValue();
+    }
+  }
+
+  /** @return The boxed value of the given {@link ClassPlan} kind whose raw bits are given. */
+  protected static Object fromBits(int kind, long bits) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        return bits != 0;
+      case ClassPlan.KIND_BYTE:
+        return (byte) bits;
+      case ClassPlan.KIND_SHORT:
+        return (short) bits;
+      case ClassPlan.KIND_CHAR:
+        return (char) bits;
+      case ClassPlan.KIND_INT:
+        return (int) bits;
+      case ClassPlan.KIND_LONG:
+        return bits;
+      case ClassPlan.KIND_FLOAT:
+        return Float.intBitsToFloat((int) bits);
+      case ClassPlan.KIND_DOUBLE:
+        return Double.longBitsToDouble(bits);
+      default:
+        throw new IllegalArgumentException("Not a primitive kind: " + kind);
+    }
   }
 
   /**
@@ -74,27 +367,358 @@ public abstract class ReflectiveBuilder<T> {
    * @throws ClassCastException
    *           if {@code field} isn't a field of T or a superclass of T and
    *           this builder doesn't allow type punning, or if {@code value}
-   *           isn't null or an instance of {@code field}'s type.
+   *           isn't null or an instance of {@code field}'s type, or if
+   *           {@code value} is null and {@code field} is primitive.
+   */
+  public void setField(Field field, Object value) {
+    long start = Instrumentation.start();
+    int slot = checkedSlotOf(field);
+    checkAssignable(field, value);
+    Object stored = ownArray(slot, value);
+    update(values -> {
+      store(values, field, slot, stored);
+      return true;
+    });
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.FIELD_WRITE, start);
+    }
+  }
+
+  /**
+   * Equivalent to {@link #setField(Field, Object)} for the field that {@code name} refers to in T,
+   * as found by {@link ClassPlan#slotOf(String)}.
+   *
+   * @throws IllegalArgumentException if T has no non-static field named {@code name}.
+   * @throws ClassCastException if {@code value} can't be assigned to the field.
+   */
+  public void setField(String name, @Nullable Object value) {
+    int slot = plan.slotOf(name);
+    if (slot < 0) {
+      throw new IllegalArgumentException(String.format("Class %s has no field %s", clazz, name));
+    }
+    setField(slot, value);
+  }
+
+  /**
+   * Equivalent to {@link #setField(Field, Object)} for the field in the given slot of T's
+   * {@link ClassPlan}.
+   *
+   * @throws IndexOutOfBoundsException if there's no such slot.
+   * @throws ClassCastException if {@code value} can't be assigned to the field.
+   */
+  public void setField(int slot, @Nullable Object value) {
+    long start = Instrumentation.start();
+    Field field = plan.getField(slot);
+    checkAssignable(field, value);
+    Object stored = ownArray(slot, value);
+    update(values -> {
+      store(values, field, slot, stored);
+      return true;
+    });
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.FIELD_WRITE, start);
+    }
+  }
+
+  /**
+   * Sets whether the array in an array-typed field of T is copied rather than shared: when it's
+   * configured by {@link #setField(Field, Object)} or copied by {@link #clone(Object)}, and when
+   * it's written into each built instance or clone. Each instance then owns its array, at the
+   * cost of one bulk copy per build. Off by default for every field.
+   *
+   * @throws IllegalArgumentException if {@code field} isn't an array-typed field of T.
+   */
+  public void setCopiesArray(Field field, boolean copies) {
+    int slot = arraySlotOf(field);
+    update(values -> {
+      // Under COPY_ON_WRITE, updates aren't mutually exclusive, so the flags are replaced by
+      // compare-and-set too.
+      while (true) {
+        boolean[] current = arrayCopySlots;
+        boolean[] next = current == null ? new boolean[plan.size()] : current.clone();
+        next[slot] = copies;
+        boolean any = false;
+        for (boolean copied : next) {
+          any |= copied;
+        }
+        if (ARRAY_COPY_SLOTS.compareAndSet(this, current, any ? next : null)) {
+          return true;
+        }
+      }
+    });
+  }
+
+  /** @return Whether the array in {@code field} is copied rather than shared. */
+  public boolean copiesArray(Field field) {
+    boolean[] copySlots = arrayCopySlots;
+    int slot = plan.slotOf(field);
+    return copySlots != null && slot >= 0 && copySlots[slot];
+  }
+
+  /**
+   * @return {@code value}, or a copy of it if it's an array in a slot whose arrays are copied
+   *         rather than shared.
+   */
+  @Nullable
+  private Object ownArray(int slot, @Nullable Object value) {
+    boolean[] copySlots = arrayCopySlots;
+    return copySlots != null && slot >= 0 && copySlots[slot] && value != null
+        ? copyArray(value)
+        : value;
+  }
+
+  /**
+   * @return A new array with the same component type and elements as {@code array}. The default
+   *         implementation uses {@link System#arraycopy}, which the JIT compiles to a bulk memory
+   *         copy.
+   */
+  protected Object copyArray(Object array) {
+    int length = Array.getLength(array);
+    Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+    System.arraycopy(array, 0, copy, 0, length);
+    return copy;
+  }
+
+  /**
+   * Copies {@code length} elements of {@code source}, starting at {@code sourcePos}, into the
+   * array configured for an array-typed field of T, starting at {@code destPos}, as by
+   * {@link System#arraycopy}. The configured array is replaced by an updated copy rather than
+   * changed in place, since instances already built and {@link BuildTemplate}s already compiled
+   * may share it; {@code source} isn't changed either.
+   *
+   * @throws IllegalArgumentException if {@code field} isn't an array-typed field of T, or no array
+   *           is configured for it.
+   * @throws ArrayStoreException if {@code source} isn't an array, or its elements can't be stored
+   *           in the configured array.
+   * @throws IndexOutOfBoundsException if either range is out of bounds.
+   */
+  public void setArrayRange(Field field, Object source, int sourcePos, int destPos, int length) {
+    int slot = arraySlotOf(field);
+    update(values -> {
+      Object array = copyArray(configuredArray(values, field, slot));
+      copyArrayRange(source, sourcePos, array, destPos, length);
+      values.setValue(slot, array);
+      return true;
+    });
+  }
+
+  /**
+   * Sets the elements from {@code from} (inclusive) to {@code to} (exclusive) of the array
+   * configured for an array-typed field of T to {@code value}, which is widened to the component
+   * type if that's primitive. As with {@link #setArrayRange}, the configured array is replaced by
+   * an updated copy.
+   *
+   * @throws IllegalArgumentException if {@code field} isn't an array-typed field of T, or no array
+   *           is configured for it.
+   * @throws ClassCastException if {@code value} can't be stored in the configured array.
+   * @throws IndexOutOfBoundsException if the range is out of bounds.
+   */
+  public void fillArray(Field field, @Nullable Object value, int from, int to) {
+    int slot = arraySlotOf(field);
+    update(values -> {
+      Object array = configuredArray(values, field, slot);
+      Class<?> component = array.getClass().getComponentType();
+      if (value == null ? component.isPrimitive() : !isReallyAssignableFrom(component, value)) {
+        throw new ClassCastException(String.format(
+            "Value %s can't be stored in a %s[] in field %s", value, component, field));
+      }
+      Objects.checkFromToIndex(from, to, Array.getLength(array));
+      int kind = ClassPlan.kindOf(component);
+      Object filled = copyArray(array);
+      fillArrayRange(filled, from, to, kind,
+          kind == ClassPlan.KIND_OBJECT ? 0 : toBits(kind, value), value);
+      values.setValue(slot, filled);
+      return true;
+    });
+  }
+
+  /**
+   * @return The slot of {@code field} in {@link #plan}.
+   * @throws IllegalArgumentException if {@code field} isn't an array-typed field of T.
+   */
+  private int arraySlotOf(Field field) {
+    int slot = plan.slotOf(field);
+    if (slot < 0 || !field.getType().isArray()) {
+      throw new IllegalArgumentException(
+          String.format("%s isn't an array field of %s", field, clazz));
+    }
+    return slot;
+  }
+
+  /** @throws IllegalArgumentException if no array is configured in the slot. */
+  private Object configuredArray(SlotValues values, Field field, int slot) {
+    Object array = values.values[slot];
+    if (array == null) {
+      throw new IllegalArgumentException("No array is configured for " + field);
+    }
+    return array;
+  }
+
+  /**
+   * Copies a range of one array into another. The default implementation is
+   * {@link System#arraycopy}, which the JIT compiles to a bulk memory copy.
    */
-  public synchronized void setField(Field field, Object value) {
-    if (!allowsTypePunning && !(field.getDeclaringClass().isAssignableFrom(clazz))) {
+  protected void copyArrayRange(Object source, int sourcePos, Object dest, int destPos,
+      int length) {
+    System.arraycopy(source, sourcePos, dest, destPos, length);
+  }
+
+  /**
+   * Sets a range of an array, already checked to be in bounds, to one value.
+   *
+   * @param kind The {@link ClassPlan} kind of the array's component type.
+   * @param bits The value, encoded as by {@link #toBits(int, Object)}, if the kind is primitive.
+   * @param value The value, if the kind is {@link ClassPlan#KIND_OBJECT}.
+   */
+  protected void fillArrayRange(Object array, int from, int to, int kind, long bits,
+      @Nullable Object value) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        Arrays.fill((boolean[]) array, from, to, bits != 0);
+        break;
+      case ClassPlan.KIND_BYTE:
+        Arrays.fill((byte[]) array, from, to, (byte) bits);
+        break;
+      case ClassPlan.KIND_SHORT:
+        Arrays.fill((short[]) array, from, to, (short) bits);
+        break;
+      case ClassPlan.KIND_CHAR:
+        Arrays.fill((char[]) array, from, to, (char) bits);
+        break;
+      case ClassPlan.KIND_INT:
+        Arrays.fill((int[]) array, from, to, (int) bits);
+        break;
+      case ClassPlan.KIND_LONG:
+        Arrays.fill((long[]) array, from, to, bits);
+        break;
+      case ClassPlan.KIND_FLOAT:
+        Arrays.fill((float[]) array, from, to, Float.intBitsToFloat((int) bits));
+        break;
+      case ClassPlan.KIND_DOUBLE:
+        Arrays.fill((double[]) array, from, to, Double.longBitsToDouble(bits));
+        break;
+      default:
+        Arrays.fill((Object[]) array, from, to, value);
+        break;
+    }
+  }
+
+  /**
+   * @return The slot of {@code field} in {@link #plan}, or -1 if it has none.
+   * @throws ClassCastException if {@code field} isn't a field of T or a superclass of T and this
+   *           builder doesn't allow type punning.
+   */
+  private int checkedSlotOf(Field field) {
+    int slot = plan.slotOf(field);
+    if (slot < 0 && !allowsTypePunning && !(field.getDeclaringClass().isAssignableFrom(clazz))) {
       throw new ClassCastException(String.format("Class %s doesn't have field %s", clazz, field));
     }
-    if (value == null) {
-      explicitlyNullFields.add(field);
+    return slot;
+  }
+
+  private static void checkAssignable(Field field, @Nullable Object value) {
+    Class<?> fieldType = field.getType();
+    if (value == null ? fieldType.isPrimitive() : !isReallyAssignableFrom(fieldType, value)) {
+      throw new ClassCastException(
+          String.format(
+              "Value %s can't be cast to %s to assign to field %s",
+              value,
+              fieldType,
+              field));
+    }
+  }
+
+  /** Stores an already type-checked value. */
+  private void store(SlotValues values, Field field, int slot, @Nullable Object value) {
+    if (slot < 0) {
+      values.otherValues.put(field, value);
+    } else if (plan.getKind(slot) == ClassPlan.KIND_OBJECT) {
+      values.setValue(slot, value);
     } else {
-      Class<?> fieldType = field.getType();
-      if (!isReallyAssignableFrom(fieldType, value)) {
-        throw new ClassCastException(
-            String.format(
-                "Value %s can't be cast to %s to assign to field %s",
-                value,
-                fieldType,
-                field));
-      }
-      explicitlyNullFields.remove(field);
+      values.setBits(slot, toBits(plan.getKind(slot), value));
+    }
+  }
+
+  /**
+   * Sets a primitive field without boxing the value, unless {@code field} has no slot in this
+   * builder's class.
+   *
+   * @param valueKind The {@link ClassPlan} kind of the value.
+   * @param bits The value, encoded as by {@link #toBits(int, Object)}.
+   * @throws ClassCastException under the same conditions as {@link #setField(Field, Object)}.
+   */
+  protected void setPrimitive(Field field, int valueKind, long bits) {
+    long start = Instrumentation.start();
+    int slot = plan.slotOf(field);
+    if (slot < 0 || plan.getKind(slot) == ClassPlan.KIND_OBJECT) {
+      setField(field, fromBits(valueKind, bits));
+      return;
+    }
+    int fieldKind = plan.getKind(slot);
+    if (!WIDENS[valueKind][fieldKind]) {
+      throw new ClassCastException(
+          String.format(
+              "Value %s can't be cast to %s to assign to field %s",
+              fromBits(valueKind, bits),
+              field.getType(),
+              field));
+    }
+    long fieldBits;
+    if (valueKind == ClassPlan.KIND_FLOAT && fieldKind == ClassPlan.KIND_DOUBLE) {
+      fieldBits = Double.doubleToRawLongBits(Float.intBitsToFloat((int) bits));
+    } else if (fieldKind == ClassPlan.KIND_CHAR) {
+      // A byte widens to a char by sign extension, then truncation to 16 bits, as in toBits.
+      fieldBits = bits & 0xFFFF;
+    } else {
+      fieldBits = bits;
+    }
+    update(values -> {
+      values.setBits(slot, fieldBits);
+      return true;
+    });
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.FIELD_WRITE, start);
     }
-    fieldValues.put(field, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setBoolean(Field field, boolean value) {
+    setPrimitive(field, ClassPlan.KIND_BOOLEAN, value ? 1 : 0);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setByte(Field field, byte value) {
+    setPrimitive(field, ClassPlan.KIND_BYTE, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setShort(Field field, short value) {
+    setPrimitive(field, ClassPlan.KIND_SHORT, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setChar(Field field, char value) {
+    setPrimitive(field, ClassPlan.KIND_CHAR, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setInt(Field field, int value) {
+    setPrimitive(field, ClassPlan.KIND_INT, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setLong(Field field, long value) {
+    setPrimitive(field, ClassPlan.KIND_LONG, value);
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setFloat(Field field, float value) {
+    setPrimitive(field, ClassPlan.KIND_FLOAT, Float.floatToRawIntBits(value));
+  }
+
+  /** Equivalent to {@link #setField(Field, Object)}, but never boxes {@code value}. */
+  public void setDouble(Field field, double value) {
+    setPrimitive(field, ClassPlan.KIND_DOUBLE, Double.doubleToRawLongBits(value));
   }
 
   /**
@@ -102,15 +726,114 @@ public abstract class ReflectiveBuilder<T> {
    *
    * @return true if the field was removed; false if it was already absent.
    */
-  public synchronized boolean unsetField(Field field) {
-    return (fieldValues.remove(field) != null) || explicitlyNullFields.remove(field);
+  public boolean unsetField(Field field) {
+    int slot = plan.slotOf(field);
+    return update(values -> slot >= 0 ? values.unset(slot) : values.unsetOther(field));
   }
 
   protected abstract T allocateInstance() throws InstantiationException;
 
+  /**
+   * @return A copy of whatever mutable state of this builder {@link #allocateInstance()} depends
+   *         on, or null if there is none. Passed to {@link #allocateInstance(Object)} by the
+   *         {@link BuildTemplate}s compiled from this builder.
+   */
+  protected Object snapshotAllocationState() {
+    return null;
+  }
+
+  /**
+   * Equivalent to {@link #allocateInstance()}, but uses state captured earlier by
+   * {@link #snapshotAllocationState()} rather than the builder's current state. Must be safe to call
+   * concurrently.
+   */
+  protected T allocateInstance(Object allocationState) throws InstantiationException {
+    return allocateInstance();
+  }
+
   protected abstract void setFieldInInstance(T objectBeingBuilt, Field field, Object value);
 
-  protected abstract Object getField(Object sourceObject, Field field);
+  /**
+   * @return The offset of {@code field} as understood by
+   *         {@link #setFieldInInstance(Object, Field, long, int, Object)}, or -1 if this builder
+   *         doesn't address fields by offset.
+   */
+  protected long getFieldOffset(Field field) {
+    return -1;
+  }
+
+  /** @return {@link #getFieldOffset(Field)} for each slot of {@link #plan}, computed once. */
+  protected final long[] getSlotOffsets() {
+    long[] offsets = slotOffsets;
+    if (offsets == null) {
+      offsets = new long[plan.size()];
+      for (int slot = 0; slot < offsets.length; slot++) {
+        offsets[slot] = getFieldOffset(plan.getField(slot));
+      }
+      slotOffsets = offsets;
+    }
+    return offsets;
+  }
+
+  /**
+   * Equivalent to {@link #setFieldInInstance(Object, Field, Object)}, but with the field's offset
+   * (from {@link #getFieldOffset(Field)}) and {@link ClassPlan} kind already looked up. Must be safe
+   * to call concurrently, since {@link BuildTemplate}s share their builder.
+   */
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      Object value) {
+    setFieldInInstance(objectBeingBuilt, field, value);
+  }
+
+  /**
+   * Sets a primitive field without boxing, where the backend supports that.
+   *
+   * @param bits The value, encoded as by {@link #toBits(int, Object)} for {@code kind}.
+   */
+  protected void putPrimitive(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      long bits) {
+    setFieldInInstance(objectBeingBuilt, field, fieldOffset, kind, fromBits(kind, bits));
+  }
+
+  /**
+   * @return The value of {@code field} in {@code sourceObject}, read while holding
+   *         {@code sourceObject}'s monitor if {@link #locksSources()}.
+   */
+  protected Object getField(Object sourceObject, Field field) {
+    if (!locksSources()) {
+      return readField(sourceObject, field);
+    }
+    synchronized (sourceObject) {
+      return readField(sourceObject, field);
+    }
+  }
+
+  /** @return The value of {@code field} in {@code sourceObject}, read without locking. */
+  protected abstract Object readField(Object sourceObject, Field field);
+
+  /**
+   * Reads a primitive field as {@link #getField(Object, Field)} does, but without boxing, where
+   * the backend supports that.
+   *
+   * @return The value, encoded as by {@link #toBits(int, Object)}.
+   */
+  protected long getPrimitive(Object sourceObject, Field field, int kind) {
+    if (!locksSources()) {
+      return readFieldBits(sourceObject, field, kind);
+    }
+    synchronized (sourceObject) {
+      return readFieldBits(sourceObject, field, kind);
+    }
+  }
+
+  /**
+   * Reads a primitive field without locking, and without boxing where the backend supports that.
+   *
+   * @return The value, encoded as by {@link #toBits(int, Object)}.
+   */
+  protected long readFieldBits(Object sourceObject, Field field, int kind) {
+    return toBits(kind, readField(sourceObject, field));
+  }
 
   /**
    * Shallowly copies all the given object's fields into this builder. Those fields must all exist
@@ -121,14 +844,10 @@ public abstract class ReflectiveBuilder<T> {
    *           does not allow type punning.
    */
   public void clone(Object source) {
-    Class<?> sourceClass = source.getClass();
-    while (!(sourceClass.equals(Object.class))) {
-      for (Field field : sourceClass.getDeclaredFields()) {
-        if (!(Modifier.isStatic(field.getModifiers()))) {
-          setField(field, getField(source, field));
-        }
-      }
-      sourceClass = sourceClass.getSuperclass();
+    long start = Instrumentation.start();
+    copyFields(source, ClassPlan.of(source.getClass()).size());
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.CLONE, start);
     }
   }
 
@@ -139,35 +858,636 @@ public abstract class ReflectiveBuilder<T> {
    * @param source The object to copy.
    */
   public void cloneSharedFields(Object source) {
+    long start = Instrumentation.start();
     Class<?> sourceClass = source.getClass();
-    while (sourceClass.isAssignableFrom(clazz)) {
+    while (!(sourceClass.isAssignableFrom(clazz))) {
       sourceClass = sourceClass.getSuperclass();
     }
-    while (!(sourceClass.equals(Object.class))) {
-      for (Field field : sourceClass.getDeclaredFields()) {
-        if (!(Modifier.isStatic(field.getModifiers()))) {
-          setField(field, getField(source, field));
+    copyFields(source, ClassPlan.of(sourceClass).size());
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.CLONE, start);
+    }
+  }
+
+  /**
+   * Copies the fields in the first {@code slotCount} slots of the plan for {@code source}'s class
+   * into this builder. Since a superclass's fields are a prefix of its subclasses' plans, this can
+   * copy the fields of any ancestor. The fields are read first, and then stored in a single update.
+   */
+  private void copyFields(Object source, int slotCount) {
+    ClassPlan sourcePlan = ClassPlan.of(source.getClass());
+    int[] targetSlots = new int[slotCount];
+    Object[] copiedValues = new Object[slotCount];
+    long[] copiedBits = new long[slotCount];
+    for (int slot = 0; slot < slotCount; slot++) {
+      targetSlots[slot] = checkedSlotOf(sourcePlan.getField(slot));
+    }
+    readFields(source, sourcePlan, slotCount, copiedValues, copiedBits);
+    for (int slot = 0; slot < slotCount; slot++) {
+      int kind = sourcePlan.getKind(slot);
+      if (targetSlots[slot] < 0 && kind != ClassPlan.KIND_OBJECT) {
+        copiedValues[slot] = fromBits(kind, copiedBits[slot]);
+      } else if (kind == ClassPlan.KIND_OBJECT) {
+        copiedValues[slot] = ownArray(targetSlots[slot], copiedValues[slot]);
+      }
+    }
+    update(values -> {
+      for (int slot = 0; slot < slotCount; slot++) {
+        int targetSlot = targetSlots[slot];
+        if (targetSlot >= 0 && plan.getKind(targetSlot) != ClassPlan.KIND_OBJECT) {
+          values.setBits(targetSlot, copiedBits[slot]);
+        } else {
+          store(values, sourcePlan.getField(slot), targetSlot, copiedValues[slot]);
         }
       }
-      sourceClass = sourceClass.getSuperclass();
+      return true;
+    });
+  }
+
+  /**
+   * Reads the fields in the first {@code slotCount} slots of {@code sourcePlan}, the plan for
+   * {@code source}'s class: reference fields into {@code values}, and primitive fields into
+   * {@code bits}, encoded as by {@link #toBits(int, Object)}. Used by {@link #clone(Object)} and
+   * {@link #cloneSharedFields(Object)}. If {@link #locksSources()}, holds {@code source}'s monitor
+   * once for all the fields.
+   */
+  protected void readFields(Object source, ClassPlan sourcePlan, int slotCount, Object[] values,
+      long[] bits) {
+    if (!locksSources()) {
+      readFieldsUnlocked(source, sourcePlan, slotCount, values, bits);
+      return;
+    }
+    synchronized (source) {
+      readFieldsUnlocked(source, sourcePlan, slotCount, values, bits);
+    }
+  }
+
+  private void readFieldsUnlocked(Object source, ClassPlan sourcePlan, int slotCount,
+      Object[] values, long[] bits) {
+    for (int slot = 0; slot < slotCount; slot++) {
+      Field field = sourcePlan.getField(slot);
+      int kind = sourcePlan.getKind(slot);
+      if (kind == ClassPlan.KIND_OBJECT) {
+        values[slot] = readField(source, field);
+      } else {
+        bits[slot] = readFieldBits(source, field, kind);
+      }
+    }
+  }
+
+  /**
+   * Compares every field of T in two instances: primitive fields by their raw bits, read without
+   * boxing where the backend can, and reference fields by identity.
+   *
+   * @return The fields of T whose values differ, with their values in {@code after}.
+   * @throws ClassCastException if either instance isn't an instance of T.
+   */
+  public FieldDelta<T> diff(T before, T after) {
+    int slotCount = plan.size();
+    Object[] beforeValues = new Object[slotCount];
+    long[] beforeBits = new long[slotCount];
+    Object[] afterValues = new Object[slotCount];
+    long[] afterBits = new long[slotCount];
+    readFields(clazz.cast(before), ClassPlan.of(before.getClass()), slotCount, beforeValues,
+        beforeBits);
+    readFields(clazz.cast(after), ClassPlan.of(after.getClass()), slotCount, afterValues,
+        afterBits);
+    long[] changed = new long[(slotCount + 63) >>> 6];
+    int changedValues = 0;
+    int changedBits = 0;
+    for (int slot = 0; slot < slotCount; slot++) {
+      boolean isObject = plan.getKind(slot) == ClassPlan.KIND_OBJECT;
+      boolean differs = isObject
+          ? beforeValues[slot] != afterValues[slot]
+          : beforeBits[slot] != afterBits[slot];
+      if (differs) {
+        changed[slot >>> 6] |= 1L << slot;
+        if (isObject) {
+          afterValues[changedValues++] = afterValues[slot];
+        } else {
+          afterBits[changedBits++] = afterBits[slot];
+        }
+      }
+    }
+    return new FieldDelta<>(clazz, changed, Arrays.copyOf(afterValues, changedValues),
+        Arrays.copyOf(afterBits, changedBits));
+  }
+
+  /**
+   * Writes the changed fields in {@code delta} into {@code instance}, leaving its other fields
+   * alone. Arrays in fields marked by {@link #setCopiesArray} are copied, as by
+   * {@link #setField(Field, Object)}.
+   *
+   * @throws IllegalArgumentException if {@code delta} wasn't made for T, or is malformed.
+   * @throws ClassCastException if a value in {@code delta} can't be assigned to its field.
+   */
+  public void applyDelta(T instance, FieldDelta<T> delta) {
+    checkDelta(delta);
+    long[] offsets = getSlotOffsets();
+    int valueIndex = 0;
+    int bitsIndex = 0;
+    for (int slot = delta.nextChangedSlot(0); slot >= 0; slot = delta.nextChangedSlot(slot + 1)) {
+      int kind = plan.getKind(slot);
+      if (kind == ClassPlan.KIND_OBJECT) {
+        setFieldInInstance(instance, plan.getField(slot), offsets[slot], kind,
+            ownArray(slot, delta.values[valueIndex++]));
+      } else {
+        putPrimitive(instance, plan.getField(slot), offsets[slot], kind, delta.bits[bitsIndex++]);
+      }
+    }
+  }
+
+  /**
+   * Sets the changed fields in {@code delta} in this builder, in a single update, leaving the other
+   * configured fields alone. Arrays in fields marked by {@link #setCopiesArray} are copied first.
+   *
+   * @throws IllegalArgumentException if {@code delta} wasn't made for T, or is malformed.
+   * @throws ClassCastException if a value in {@code delta} can't be assigned to its field.
+   */
+  public void applyDelta(FieldDelta<T> delta) {
+    checkDelta(delta);
+    Object[] owned = delta.values.clone();
+    int ownedIndex = 0;
+    for (int slot = delta.nextChangedSlot(0); slot >= 0; slot = delta.nextChangedSlot(slot + 1)) {
+      if (plan.getKind(slot) == ClassPlan.KIND_OBJECT) {
+        owned[ownedIndex] = ownArray(slot, owned[ownedIndex]);
+        ownedIndex++;
+      }
+    }
+    update(values -> {
+      int valueIndex = 0;
+      int bitsIndex = 0;
+      for (int slot = delta.nextChangedSlot(0); slot >= 0;
+          slot = delta.nextChangedSlot(slot + 1)) {
+        if (plan.getKind(slot) == ClassPlan.KIND_OBJECT) {
+          values.setValue(slot, owned[valueIndex++]);
+        } else {
+          values.setBits(slot, delta.bits[bitsIndex++]);
+        }
+      }
+      return true;
+    });
+  }
+
+  /**
+   * Checks that {@code delta} was made for T, and that its values match its bitmap, since it may
+   * have come from another process.
+   */
+  private void checkDelta(FieldDelta<T> delta) {
+    if (delta.clazz != clazz) {
+      throw new IllegalArgumentException(
+          String.format("Can't apply a delta of %s to a %s", delta.clazz, clazz));
+    }
+    int slotCount = plan.size();
+    if (delta.changed.length != (slotCount + 63) >>> 6
+        || (slotCount & 63) != 0 && delta.changed.length > 0
+            && delta.changed[delta.changed.length - 1] >>> (slotCount & 63) != 0) {
+      throw new IllegalArgumentException("Delta doesn't match the fields of " + clazz);
+    }
+    int valueIndex = 0;
+    int bitsIndex = 0;
+    for (int slot = delta.nextChangedSlot(0); slot >= 0; slot = delta.nextChangedSlot(slot + 1)) {
+      if (plan.getKind(slot) != ClassPlan.KIND_OBJECT) {
+        bitsIndex++;
+      } else if (valueIndex < delta.values.length) {
+        checkAssignable(plan.getField(slot), delta.values[valueIndex++]);
+      } else {
+        valueIndex++;
+      }
+    }
+    if (valueIndex != delta.values.length || bitsIndex != delta.bits.length) {
+      throw new IllegalArgumentException("Delta doesn't match the fields of " + clazz);
+    }
+  }
+
+  /**
+   * @return An immutable template that builds the same objects this builder currently would, but
+   *         without locking and from any number of threads.
+   */
+  public BuildTemplate<T> compile() {
+    return compile(arrayCopySlots);
+  }
+
+  /**
+   * @param copySlots Which slots hold arrays that the template copies into each instance, or null
+   *          if none do.
+   */
+  private BuildTemplate<T> compile(@Nullable boolean[] copySlots) {
+    Object allocationState = snapshotAllocationState();
+    return readConfigured(configured -> compile(allocationState, configured, copySlots));
+  }
+
+  private BuildTemplate<T> compile(Object allocationState, SlotValues configured,
+      @Nullable boolean[] copySlots) {
+    long[] offsets = getSlotOffsets();
+    int count = configured.otherValues.size();
+    for (int slot = 0; slot < configured.size(); slot++) {
+      if (configured.isSet[slot]) {
+        count++;
+      }
+    }
+    Field[] fields = new Field[count];
+    long[] fieldOffsets = new long[count];
+    int[] kinds = new int[count];
+    Object[] values = new Object[count];
+    long[] bits = new long[count];
+    boolean[] copiesArrays = copySlots == null ? null : new boolean[count];
+    int i = 0;
+    for (int slot = 0; slot < configured.size(); slot++) {
+      if (configured.isSet[slot]) {
+        if (copiesArrays != null) {
+          copiesArrays[i] = copySlots[slot];
+        }
+        fields[i] = plan.getField(slot);
+        fieldOffsets[i] = offsets[slot];
+        kinds[i] = plan.getKind(slot);
+        values[i] = configured.values[slot];
+        bits[i] = configured.bits[slot];
+        i++;
+      }
+    }
+    for (Map.Entry<Field, Object> entry : configured.otherValues.entrySet()) {
+      fields[i] = entry.getKey();
+      values[i] = entry.getValue();
+      fieldOffsets[i] = getFieldOffset(fields[i]);
+      kinds[i] = ClassPlan.kindOf(fields[i].getType());
+      if (kinds[i] != ClassPlan.KIND_OBJECT) {
+        bits[i] = toBits(kinds[i], values[i]);
+      }
+      i++;
     }
+    return new BuildTemplate<>(this, allocationState, fields, fieldOffsets, kinds, values, bits,
+        copiesArrays);
   }
 
   public T build() {
+    long start = Instrumentation.start();
     T built;
     try {
       built = allocateInstance();
-    } catch (InstantiationException e) {
-      throw new RuntimeException(e);
+    } catch (InstantiationException | RuntimeException e) {
+      if (Instrumentation.ENABLED) {
+        Instrumentation.allocationFailed(clazz, e);
+      }
+      throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+    }
+    readConfigured(configured -> {
+      writeConfigured(built, configured);
+      return null;
+    });
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.BUILD, start);
+    }
+    return built;
+  }
+
+  /**
+   * Equivalent to {@link #build()}, but rewrites an existing instance rather than allocating a new
+   * one: every field of T that isn't configured is reset to null, zero or false, and then the
+   * configured fields are written as {@link #build()} would. Callers must make sure nothing else
+   * still uses {@code reuse}.
+   *
+   * @return {@code reuse}.
+   * @throws IllegalArgumentException if {@code reuse}'s class isn't exactly T.
+   * @throws UnsupportedOperationException if this builder's instances come from a constructor, and
+   *           so might not have their fields at the default values.
+   */
+  public T build(T reuse) {
+    if (reuse.getClass() != clazz) {
+      throw new IllegalArgumentException(
+          String.format("Can't reuse a %s as a %s", reuse.getClass(), clazz));
     }
-    synchronized (this) {
-      for (Field f : fieldValues.keySet()) {
-        setFieldInInstance(built, f, fieldValues.get(f));
+    if (!allocatesWithoutConstructor()) {
+      throw new UnsupportedOperationException(
+          String.format("%s can't reuse instances", getClass().getName()));
+    }
+    long start = Instrumentation.start();
+    resetFields(reuse);
+    readConfigured(configured -> {
+      writeConfigured(reuse, configured);
+      return null;
+    });
+    if (Instrumentation.ENABLED) {
+      Instrumentation.record(clazz, Operation.BUILD, start);
+    }
+    return reuse;
+  }
+
+  /**
+   * @return Whether {@link #allocateInstance()} leaves every field of T at its default value, so
+   *         that {@link #build(Object)} can reset an existing instance in place of allocating one.
+   */
+  protected boolean allocatesWithoutConstructor() {
+    return false;
+  }
+
+  /**
+   * Sets every field of T in {@code reuse} to null, zero or false, so that it looks as if it came
+   * straight from {@link #allocateInstance()}.
+   */
+  protected void resetFields(T reuse) {
+    long[] offsets = getSlotOffsets();
+    for (int slot = 0; slot < offsets.length; slot++) {
+      int kind = plan.getKind(slot);
+      if (kind == ClassPlan.KIND_OBJECT) {
+        setFieldInInstance(reuse, plan.getField(slot), offsets[slot], kind, null);
+      } else {
+        putPrimitive(reuse, plan.getField(slot), offsets[slot], kind, 0);
       }
-      for (Field f : explicitlyNullFields) {
-        setFieldInInstance(built, f, null);
+    }
+  }
+
+  /**
+   * Builds {@code count} instances at once, equivalent to calling {@link #build()} once per row of
+   * {@code source} and then setting that row's column values. The builder's configuration is read
+   * only once, to {@link #compile()} it; the fields are then written column by column, with each
+   * column's offset, kind and type check looked up only once per batch.
+   *
+   * @throws ClassCastException if a column's field can't be set by this builder, or a value can't
+   *           be assigned to its field.
+   */
+  public T[] buildAll(int count, ColumnSource source) {
+    return buildAll(count, source, null);
+  }
+
+  /**
+   * Equivalent to {@link #buildAll(int, ColumnSource)}, but splits batches of more than
+   * {@link #BULK_BUILD_CHUNK} rows across {@code pool} if it's not null.
+   */
+  @SuppressWarnings("unchecked")
+  public T[] buildAll(int count, ColumnSource source, @Nullable ForkJoinPool pool) {
+    BulkBuild bulkBuild = new BulkBuild(compile(), source, (T[]) Array.newInstance(clazz, count));
+    if (pool == null || count <= BULK_BUILD_CHUNK) {
+      bulkBuild.build(0, count);
+    } else {
+      pool.invoke(bulkBuild.new Chunk(0, count));
+    }
+    return bulkBuild.out;
+  }
+
+  /** The number of rows below which {@link #buildAll} doesn't split a batch any further. */
+  protected static final int BULK_BUILD_CHUNK = 1024;
+
+  /** The per-batch state of {@link #buildAll}. */
+  private final class BulkBuild {
+    final BuildTemplate<T> template;
+    final ColumnSource source;
+    final T[] out;
+    final Field[] fields;
+    final long[] offsets;
+    final int[] kinds;
+
+    BulkBuild(BuildTemplate<T> template, ColumnSource source, T[] out) {
+      this.template = template;
+      this.source = source;
+      this.out = out;
+      int columns = source.getColumnCount();
+      fields = new Field[columns];
+      offsets = new long[columns];
+      kinds = new int[columns];
+      long[] slotOffsets = getSlotOffsets();
+      for (int column = 0; column < columns; column++) {
+        Field field = source.getField(column);
+        int slot = plan.slotOf(field);
+        if (slot < 0 && !allowsTypePunning
+            && !(field.getDeclaringClass().isAssignableFrom(clazz))) {
+          throw new ClassCastException(
+              String.format("Class %s doesn't have field %s", clazz, field));
+        }
+        fields[column] = field;
+        offsets[column] = slot < 0 ? getFieldOffset(field) : slotOffsets[slot];
+        kinds[column] = slot < 0 ? ClassPlan.kindOf(field.getType()) : plan.getKind(slot);
       }
     }
-    return built;
+
+    /** Builds rows {@code from} (inclusive) to {@code to} (exclusive). */
+    void build(int from, int to) {
+      for (int row = from; row < to; row++) {
+        out[row] = template.newInstance();
+      }
+      for (int column = 0; column < fields.length; column++) {
+        Field field = fields[column];
+        long offset = offsets[column];
+        int kind = kinds[column];
+        if (kind == ClassPlan.KIND_OBJECT) {
+          for (int row = from; row < to; row++) {
+            Object value = source.getValue(column, row);
+            checkAssignable(field, value);
+            setFieldInInstance(out[row], field, offset, kind, value);
+          }
+        } else {
+          for (int row = from; row < to; row++) {
+            putPrimitive(out[row], field, offset, kind, source.getBits(column, row));
+          }
+        }
+      }
+    }
+
+    final class Chunk extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private final int from;
+      private final int to;
+
+      Chunk(int from, int to) {
+        this.from = from;
+        this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+        if (to - from <= BULK_BUILD_CHUNK) {
+          build(from, to);
+        } else {
+          int middle = (from + to) >>> 1;
+          invokeAll(new Chunk(from, middle), new Chunk(middle, to));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return Shallow copies of {@code originals}, in the same order, made on the calling thread.
+   * @see #cloneAll(Object[], ForkJoinPool, int)
+   */
+  public List<T> cloneAll(Collection<? extends T> originals) {
+    return cloneAll(originals, null, BULK_BUILD_CHUNK);
+  }
+
+  /**
+   * @return Shallow copies of {@code originals}, in the same order, as a fixed-size list.
+   * @see #cloneAll(Object[], ForkJoinPool, int)
+   */
+  @SuppressWarnings("unchecked")
+  public List<T> cloneAll(Collection<? extends T> originals, @Nullable ForkJoinPool pool,
+      int chunkSize) {
+    return Arrays.asList(cloneAll((T[]) originals.toArray(), pool, chunkSize));
+  }
+
+  /**
+   * @return Shallow copies of {@code originals}, in the same order, made on the calling thread.
+   * @see #cloneAll(Object[], ForkJoinPool, int)
+   */
+  public T[] cloneAll(T[] originals) {
+    return cloneAll(originals, null, BULK_BUILD_CHUNK);
+  }
+
+  /**
+   * Copies many instances at once. Each copy is equivalent to calling {@link #clone(Object)} on a
+   * copy of this builder and then {@link #build()}: it's built from this builder's configuration,
+   * and then every field of T is copied from its original, but this builder isn't changed. The
+   * configuration is read only once, to {@link #compile()} it, and each original's fields are read
+   * by their slots in {@link #plan}, with no per-copy field lookups.
+   *
+   * @param originals Instances of T or its subclasses, or nulls, which are copied as nulls.
+   * @param pool If not null, the pool that copies batches of more than {@code chunkSize} instances
+   *          in parallel.
+   * @param chunkSize The number of instances below which a batch isn't split any further.
+   * @return A new array of T holding the copies, in the same order as {@code originals}.
+   * @throws ClassCastException if an original isn't an instance of T.
+   */
+  @SuppressWarnings("unchecked")
+  public T[] cloneAll(T[] originals, @Nullable ForkJoinPool pool, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    for (Object original : originals) {
+      if (original != null && !clazz.isInstance(original)) {
+        throw new ClassCastException(
+            String.format("Can't clone a %s as a %s", original.getClass(), clazz));
+      }
+    }
+    // Every slot is overwritten from the originals, so the template needn't copy any arrays.
+    BulkClone bulkClone =
+        new BulkClone(compile(null), originals, (T[]) Array.newInstance(clazz, originals.length));
+    if (pool == null || originals.length <= chunkSize) {
+      bulkClone.copy(0, originals.length);
+    } else {
+      pool.invoke(bulkClone.new Chunk(0, originals.length, chunkSize));
+    }
+    return bulkClone.out;
+  }
+
+  /** The per-batch state of {@link #cloneAll}. */
+  private final class BulkClone {
+    final BuildTemplate<T> template;
+    final T[] originals;
+    final T[] out;
+    final long[] offsets = getSlotOffsets();
+
+    BulkClone(BuildTemplate<T> template, T[] originals, T[] out) {
+      this.template = template;
+      this.originals = originals;
+      this.out = out;
+    }
+
+    /** Copies originals {@code from} (inclusive) to {@code to} (exclusive). */
+    void copy(int from, int to) {
+      int slotCount = plan.size();
+      Object[] values = new Object[slotCount];
+      long[] bits = new long[slotCount];
+      for (int i = from; i < to; i++) {
+        T original = originals[i];
+        if (original == null) {
+          continue;
+        }
+        long start = Instrumentation.start();
+        // T's slots are a prefix of the plan for any subclass of T.
+        readFields(original, ClassPlan.of(original.getClass()), slotCount, values, bits);
+        T copy = template.newInstance();
+        for (int slot = 0; slot < slotCount; slot++) {
+          int kind = plan.getKind(slot);
+          if (kind == ClassPlan.KIND_OBJECT) {
+            setFieldInInstance(copy, plan.getField(slot), offsets[slot], kind,
+                ownArray(slot, values[slot]));
+            values[slot] = null;
+          } else {
+            putPrimitive(copy, plan.getField(slot), offsets[slot], kind, bits[slot]);
+          }
+        }
+        out[i] = copy;
+        if (Instrumentation.ENABLED) {
+          Instrumentation.record(clazz, Operation.CLONE, start);
+        }
+      }
+    }
+
+    final class Chunk extends RecursiveAction {
+      private static final long serialVersionUID = 1L;
+      private final int from;
+      private final int to;
+      private final int chunkSize;
+
+      Chunk(int from, int to, int chunkSize) {
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+      }
+
+      @Override
+      protected void compute() {
+        if (to - from <= chunkSize) {
+          copy(from, to);
+        } else {
+          int middle = (from + to) >>> 1;
+          invokeAll(new Chunk(from, middle, chunkSize), new Chunk(middle, to, chunkSize));
+        }
+      }
+    }
+  }
+
+  /** Writes every configured field into {@code built}, copying arrays where that's required. */
+  private void writeConfigured(T built, SlotValues configured) {
+    writeFields(built, configured);
+    writeArrayCopies(built, configured);
+  }
+
+  /**
+   * Replaces each configured array that's copied rather than shared in {@code built} with a copy of
+   * its own. Must be called after the configured fields are written by anything other than
+   * {@link #build()} or {@link #build(Object)}.
+   */
+  protected final void writeArrayCopies(T built, SlotValues configured) {
+    boolean[] copySlots = arrayCopySlots;
+    if (copySlots == null) {
+      return;
+    }
+    long[] offsets = getSlotOffsets();
+    for (int slot = 0; slot < copySlots.length; slot++) {
+      if (copySlots[slot] && configured.isSet[slot] && configured.values[slot] != null) {
+        setFieldInInstance(built, plan.getField(slot), offsets[slot], ClassPlan.KIND_OBJECT,
+            copyArray(configured.values[slot]));
+      }
+    }
+  }
+
+  /**
+   * Writes every configured field into {@code built}. Called by {@link #build()} with the values
+   * from {@link #currentSlots()}, while holding this builder's lock if that's needed to read them.
+   */
+  protected void writeFields(T built, SlotValues configured) {
+    long[] offsets = getSlotOffsets();
+    for (int slot = 0; slot < offsets.length; slot++) {
+      if (configured.isSet[slot]) {
+        writeSlot(built, configured, slot, offsets[slot]);
+      }
+    }
+    writeOtherFields(built, configured);
+  }
+
+  /** Writes the configured value of one slot of {@link #plan} into {@code built}. */
+  protected final void writeSlot(T built, SlotValues configured, int slot, long fieldOffset) {
+    int kind = plan.getKind(slot);
+    if (kind == ClassPlan.KIND_OBJECT) {
+      setFieldInInstance(built, plan.getField(slot), fieldOffset, kind, configured.values[slot]);
+    } else {
+      putPrimitive(built, plan.getField(slot), fieldOffset, kind, configured.bits[slot]);
+    }
+  }
+
+  /** Writes the configured values of fields outside {@link #plan} into {@code built}. */
+  protected final void writeOtherFields(T built, SlotValues configured) {
+    for (Map.Entry<Field, Object> entry : configured.otherValues.entrySet()) {
+      setFieldInInstance(built, entry.getKey(), entry.getValue());
+    }
   }
 }
@@ -0,0 +1,354 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+
+import com.github.redstonevalley.util.reflect.builder.generated.GeneratedBuilder;
+import com.github.redstonevalley.util.reflect.builder.invoke.VarHandleBuilder;
+import com.github.redstonevalley.util.reflect.builder.objenesis.ObjenesisBuilder;
+import com.github.redstonevalley.util.reflect.builder.sun.android.AndroidSunMiscUnsafeBuilder;
+import com.github.redstonevalley.util.reflect.builder.sun.oracle.OracleSunMiscUnsafeBuilder;
+
+/**
+ * Creates {@link ReflectiveBuilder}s with whichever backend works best for a class on this JVM.
+ *
+ * <p>If the class was annotated with {@link GenerateBuilder} and its {@link PrecompiledBuilder} is
+ * on the classpath, that builder is always used. Otherwise, the runtime is probed once, for
+ * {@code sun.misc.Unsafe} and which of its accessors are present, and for Objenesis and ASM on the
+ * classpath. Then, the first time a class is asked for, each available {@link Backend} is tried on
+ * it in order of preference: a backend works if it can build an instance and copy it. Backends
+ * that allocate without running a constructor are always preferred, since they build the same
+ * objects whichever of them is chosen; the constructing backends, which need a no-argument
+ * constructor, are only a fallback.
+ *
+ * <p>Type punning, which only the {@code sun.misc.Unsafe} builders support, is turned off for them,
+ * so every backend accepts the same fields, and a call site behaves the same whichever is chosen.
+ *
+ * <p>If the system property {@value #CALIBRATE_PROPERTY} is true, the working backends are also
+ * timed on the class with a short micro-benchmark, and the fastest is chosen instead of the first.
+ * Either way, the choice is made once per class. If a {@link PlanArchive} recorded a backend for
+ * the class, that backend is tried first, and chosen without trying the others if it works.
+ *
+ * @author cryoc
+ */
+public final class ReflectiveBuilders {
+
+  /** The system property that turns on calibration. */
+  public static final String CALIBRATE_PROPERTY =
+      "com.github.redstonevalley.util.reflect.builder.calibrate";
+
+  private static final boolean CALIBRATE = Boolean.getBoolean(CALIBRATE_PROPERTY);
+
+  /** The number of builds in each timed round of calibration. */
+  private static final int CALIBRATION_BUILDS = 2000;
+
+  /** The number of timed rounds per backend, of which the fastest counts. */
+  private static final int CALIBRATION_ROUNDS = 5;
+
+  private static final boolean HAS_UNSAFE = hasUnsafe();
+  private static final boolean HAS_SUB_WORD_UNSAFE = HAS_UNSAFE && hasSubWordUnsafe();
+  private static final boolean HAS_OBJENESIS = isPresent("org.objenesis.ObjenesisStd");
+  private static final boolean HAS_ASM = isPresent("org.objectweb.asm.ClassWriter");
+
+  /** Keeps calibration's builds from being optimized away. */
+  @SuppressWarnings("unused")
+  private static volatile Object sink;
+
+  /** The constructor of each class's {@link PrecompiledBuilder}, if it has one. */
+  private static final ClassValue<Optional<Constructor<?>>> PRECOMPILED_CONSTRUCTORS =
+      new ClassValue<Optional<Constructor<?>>>() {
+        @Override
+        protected Optional<Constructor<?>> computeValue(Class<?> clazz) {
+          try {
+            return Optional.of(Class.forName(
+                    PrecompiledBuilder.builderClassName(clazz), true, clazz.getClassLoader())
+                .getConstructor(ConcurrencyPolicy.class));
+          } catch (ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+          }
+        }
+      };
+
+  private static final ClassValue<Backend> BACKENDS = new ClassValue<Backend>() {
+    @Override
+    protected Backend computeValue(Class<?> clazz) {
+      return chooseBackend(clazz);
+    }
+  };
+
+  /** The backends that {@link ReflectiveBuilders} chooses from, in order of preference. */
+  public enum Backend {
+    /** The {@link PrecompiledBuilder} generated for a class with {@link GenerateBuilder}. */
+    PRECOMPILED(true) {
+      @Override
+      boolean isAvailable() {
+        return true;
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+          throws ReflectiveOperationException {
+        Optional<Constructor<?>> constructor = PRECOMPILED_CONSTRUCTORS.get(clazz);
+        if (!constructor.isPresent()) {
+          throw new ClassNotFoundException(PrecompiledBuilder.builderClassName(clazz));
+        }
+        return (ReflectiveBuilder<T>) constructor.get().newInstance(policy);
+      }
+    },
+
+    /** {@link OracleSunMiscUnsafeBuilder}: needs the full {@code sun.misc.Unsafe}. */
+    ORACLE_UNSAFE(false) {
+      @Override
+      boolean isAvailable() {
+        return HAS_SUB_WORD_UNSAFE;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+        return new OracleSunMiscUnsafeBuilder<>(clazz, false, policy);
+      }
+    },
+
+    /** {@link AndroidSunMiscUnsafeBuilder}: needs only the int, long and object accessors. */
+    ANDROID_UNSAFE(false) {
+      @Override
+      boolean isAvailable() {
+        return HAS_UNSAFE;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+        return new AndroidSunMiscUnsafeBuilder<>(clazz, false, policy);
+      }
+    },
+
+    /** {@link VarHandleBuilder}: needs T's package to be open to this library. */
+    VAR_HANDLE(false) {
+      @Override
+      boolean isAvailable() {
+        return true;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+        return new VarHandleBuilder<>(clazz, policy);
+      }
+    },
+
+    /** {@link ObjenesisBuilder}: needs Objenesis to have an instantiation strategy for T. */
+    OBJENESIS(false) {
+      @Override
+      boolean isAvailable() {
+        return HAS_OBJENESIS;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy) {
+        return new ObjenesisBuilder<>(clazz, ObjenesisHolder.OBJENESIS.getInstantiatorOf(clazz),
+            policy);
+      }
+    },
+
+    /** {@link GeneratedBuilder}: needs ASM and a no-argument constructor. */
+    GENERATED(true) {
+      @Override
+      boolean isAvailable() {
+        return HAS_ASM;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+          throws NoSuchMethodException {
+        return new GeneratedBuilder<>(clazz, noArgConstructor(clazz), policy);
+      }
+    },
+
+    /** {@link ConstructingBuilder}: needs a no-argument constructor. */
+    CONSTRUCTING(true) {
+      @Override
+      boolean isAvailable() {
+        return true;
+      }
+
+      @Override
+      <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+          throws NoSuchMethodException {
+        return new ConstructingBuilder<>(clazz, noArgConstructor(clazz), policy);
+      }
+    };
+
+    /** Whether this backend's instances come from a constructor. */
+    final boolean runsConstructor;
+
+    Backend(boolean runsConstructor) {
+      this.runsConstructor = runsConstructor;
+    }
+
+    /** @return Whether this JVM has what this backend needs, regardless of the built class. */
+    abstract boolean isAvailable();
+
+    abstract <T> ReflectiveBuilder<T> create(Class<T> clazz, ConcurrencyPolicy policy)
+        throws ReflectiveOperationException;
+  }
+
+  /** Holds the shared {@link Objenesis}, so it's only loaded if it's present. */
+  private static final class ObjenesisHolder {
+    static final Objenesis OBJENESIS = new ObjenesisStd(true);
+  }
+
+  private ReflectiveBuilders() {}
+
+  /** Equivalent to {@code forClass(clazz, ConcurrencyPolicy.MONITOR)}. */
+  public static <T> ReflectiveBuilder<T> forClass(Class<T> clazz) {
+    return forClass(clazz, ConcurrencyPolicy.MONITOR);
+  }
+
+  /**
+   * @return A new builder for {@code clazz}, using the backend chosen by
+   *         {@link #backendFor(Class)}. Whichever backend that is, the builder doesn't allow type
+   *         punning: setting a field of a class other than {@code clazz} or one of its superclasses
+   *         throws {@link ClassCastException}, so callers behave the same on every JVM.
+   * @throws IllegalArgumentException if no backend can build {@code clazz}.
+   */
+  public static <T> ReflectiveBuilder<T> forClass(Class<T> clazz, ConcurrencyPolicy policy) {
+    try {
+      return backendFor(clazz).create(clazz, policy);
+    } catch (ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return The backend that {@link #forClass(Class)} uses for {@code clazz}, which is chosen the
+   *         first time it's needed.
+   * @throws IllegalArgumentException if no backend can build {@code clazz}.
+   */
+  public static Backend backendFor(Class<?> clazz) {
+    return BACKENDS.get(clazz);
+  }
+
+  private static Backend chooseBackend(Class<?> clazz) {
+    Backend archived = ClassPlan.of(clazz).getArchivedBackend();
+    if (archived != null && archived.isAvailable() && tryBackend(archived, clazz) != null) {
+      return archived;
+    }
+    if (PRECOMPILED_CONSTRUCTORS.get(clazz).isPresent()
+        && tryBackend(Backend.PRECOMPILED, clazz) != null) {
+      return Backend.PRECOMPILED;
+    }
+    List<ReflectiveBuilder<?>> working = new ArrayList<>();
+    List<Backend> workingBackends = new ArrayList<>();
+    for (Backend backend : Backend.values()) {
+      if (backend == Backend.PRECOMPILED) {
+        continue;
+      }
+      if (!workingBackends.isEmpty() && backend.runsConstructor
+          && !workingBackends.get(0).runsConstructor) {
+        break;
+      }
+      if (!backend.isAvailable()) {
+        continue;
+      }
+      ReflectiveBuilder<?> builder = tryBackend(backend, clazz);
+      if (builder != null) {
+        working.add(builder);
+        workingBackends.add(backend);
+      }
+    }
+    if (working.isEmpty()) {
+      throw new IllegalArgumentException("No builder backend can build " + clazz);
+    }
+    if (!CALIBRATE || working.size() == 1) {
+      return workingBackends.get(0);
+    }
+    int fastest = 0;
+    long fastestTime = Long.MAX_VALUE;
+    for (int i = 0; i < working.size(); i++) {
+      long time = time(working.get(i));
+      if (time < fastestTime) {
+        fastest = i;
+        fastestTime = time;
+      }
+    }
+    return workingBackends.get(fastest);
+  }
+
+  /**
+   * @return A builder for {@code clazz} from {@code backend}, configured with a copy of an instance
+   *         it built itself; or null if any of that fails.
+   */
+  private static <T> ReflectiveBuilder<T> tryBackend(Backend backend, Class<T> clazz) {
+    try {
+      ReflectiveBuilder<T> builder = backend.create(clazz, ConcurrencyPolicy.MONITOR);
+      builder.clone(builder.build());
+      builder.build();
+      return builder;
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /** @return The fastest of {@link #CALIBRATION_ROUNDS} timings of a batch of builds. */
+  private static long time(ReflectiveBuilder<?> builder) {
+    long fastest = Long.MAX_VALUE;
+    for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+      long start = System.nanoTime();
+      Object built = null;
+      for (int i = 0; i < CALIBRATION_BUILDS; i++) {
+        built = builder.build();
+      }
+      fastest = Math.min(fastest, System.nanoTime() - start);
+      sink = built;
+    }
+    return fastest;
+  }
+
+  private static <T> Constructor<T> noArgConstructor(Class<T> clazz) throws NoSuchMethodException {
+    Constructor<T> constructor = clazz.getDeclaredConstructor();
+    constructor.setAccessible(true);
+    return constructor;
+  }
+
+  private static boolean hasUnsafe() {
+    try {
+      Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+      unsafeField.setAccessible(true);
+      return unsafeField.get(null) != null;
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /** @return Whether {@code sun.misc.Unsafe} has accessors for fields narrower than an int. */
+  private static boolean hasSubWordUnsafe() {
+    try {
+      Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+      Class<?>[] types = {boolean.class, byte.class, short.class, char.class, float.class,
+          double.class};
+      for (Class<?> type : types) {
+        String name = Character.toUpperCase(type.getName().charAt(0)) + type.getName().substring(1);
+        unsafe.getMethod("get" + name, Object.class, long.class);
+        unsafe.getMethod("put" + name, Object.class, long.class, type);
+      }
+      return true;
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static boolean isPresent(String className) {
+    try {
+      Class.forName(className, false, ReflectiveBuilders.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+}
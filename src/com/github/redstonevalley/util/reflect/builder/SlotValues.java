@@ -0,0 +1,75 @@
+package com.github.redstonevalley.util.reflect.builder;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * The values configured in a {@link ReflectiveBuilder} for the slots of its class's
+ * {@link ClassPlan}. Reference fields keep their value in {@link #values}; primitive fields keep
+ * theirs unboxed in {@link #bits}, encoded as by {@link ReflectiveBuilder#toBits(int, Object)}.
+ * Fields without a slot (static fields, and fields of other classes when type punning is allowed)
+ * keep their boxed values in {@link #otherValues}.
+ *
+ * <p>Not thread-safe; the owning builder is responsible for synchronization, or for never changing
+ * an instance once other threads can see it.
+ *
+ * @author cryoc
+ */
+public final class SlotValues {
+  public final Object[] values;
+  public final long[] bits;
+  public final boolean[] isSet;
+  public final HashMap<Field, Object> otherValues;
+
+  public SlotValues(int size) {
+    values = new Object[size];
+    bits = new long[size];
+    isSet = new boolean[size];
+    otherValues = new HashMap<>();
+  }
+
+  private SlotValues(SlotValues original) {
+    values = original.values.clone();
+    bits = original.bits.clone();
+    isSet = original.isSet.clone();
+    otherValues = new HashMap<>(original.otherValues);
+  }
+
+  public SlotValues copy() {
+    return new SlotValues(this);
+  }
+
+  public int size() {
+    return isSet.length;
+  }
+
+  public void setValue(int slot, @Nullable Object value) {
+    values[slot] = value;
+    isSet[slot] = true;
+  }
+
+  public void setBits(int slot, long value) {
+    bits[slot] = value;
+    isSet[slot] = true;
+  }
+
+  /** @return true if the slot was set; false if it was already unset. */
+  public boolean unset(int slot) {
+    boolean wasSet = isSet[slot];
+    values[slot] = null;
+    bits[slot] = 0;
+    isSet[slot] = false;
+    return wasSet;
+  }
+
+  /** @return true if {@code field} was set in {@link #otherValues}; false otherwise. */
+  public boolean unsetOther(Field field) {
+    if (!otherValues.containsKey(field)) {
+      return false;
+    }
+    otherValues.remove(field);
+    return true;
+  }
+}
@@ -10,6 +10,10 @@ public abstract class TypeCheckedReflectiveBuilder<T> extends ReflectiveBuilder<
     super(clazz, false);
   }
 
+  public TypeCheckedReflectiveBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, false, concurrencyPolicy);
+  }
+
   /**
    * {@inheritDoc}
    * 
@@ -17,8 +21,32 @@ public abstract class TypeCheckedReflectiveBuilder<T> extends ReflectiveBuilder<
    */
   @Override
   public void setField(Field field, @Nullable Object value) {
-    field.setAccessible(true);
-    super.setField(field, value);
+    super.setField(accessible(field), value);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws SecurityException if the field to be set cannot be made accessible.
+   */
+  @Override
+  protected void setPrimitive(Field field, int valueKind, long bits) {
+    super.setPrimitive(accessible(field), valueKind, bits);
+  }
+
+  /**
+   * @return An accessible copy of {@code field}, which is shared with all other builders when
+   *         {@code field} is non-static.
+   * @throws SecurityException if the field cannot be made accessible.
+   */
+  protected static Field accessible(Field field) {
+    ClassPlan declaringPlan = ClassPlan.ofDeclaringClass(field);
+    int slot = declaringPlan.slotOf(field);
+    if (slot < 0) {
+      field.setAccessible(true);
+      return field;
+    }
+    return declaringPlan.getAccessibleField(slot);
   }
 
   /**
@@ -31,36 +59,106 @@ public abstract class TypeCheckedReflectiveBuilder<T> extends ReflectiveBuilder<
    */
   protected void setFieldInInstance(T objectBeingBuilt, Field field, @Nullable Object value) {
     try {
-      field.set(objectBeingBuilt, value);
+      accessible(field).set(objectBeingBuilt, value);
     } catch (IllegalArgumentException | IllegalAccessException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /** @return The field's slot in {@link #plan}, whose accessible copy can be used directly. */
   @Override
-  protected Object getField(Object sourceObject, Field field) {
-    synchronized (sourceObject) {
-      field.setAccessible(true);
-      try {
-        return field.get(sourceObject);
-      } catch (IllegalArgumentException | IllegalAccessException e) {
-        throw new RuntimeException(e);
-      }
+  protected long getFieldOffset(Field field) {
+    return plan.slotOf(field);
+  }
+
+  private Field accessible(Field field, long fieldOffset) {
+    return fieldOffset < 0 ? accessible(field) : plan.getAccessibleField((int) fieldOffset);
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      @Nullable Object value) {
+    try {
+      accessible(field, fieldOffset).set(objectBeingBuilt, value);
+    } catch (IllegalArgumentException | IllegalAccessException e) {
+      throw new RuntimeException(e);
     }
   }
 
   @Override
-  public T build() {
-    T built = allocateInstance();
-    synchronized (this) {
-      for (Field f : fieldValues.keySet()) {
-        setFieldInInstance(built, f, fieldValues.get(f));
+  protected void putPrimitive(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      long bits) {
+    Field accessibleField = accessible(field, fieldOffset);
+    try {
+      switch (kind) {
+        case ClassPlan.KIND_BOOLEAN:
+          accessibleField.setBoolean(objectBeingBuilt, bits != 0);
+          break;
+        case ClassPlan.KIND_BYTE:
+          accessibleField.setByte(objectBeingBuilt, (byte) bits);
+          break;
+        case ClassPlan.KIND_SHORT:
+          accessibleField.setShort(objectBeingBuilt, (short) bits);
+          break;
+        case ClassPlan.KIND_CHAR:
+          accessibleField.setChar(objectBeingBuilt, (char) bits);
+          break;
+        case ClassPlan.KIND_INT:
+          accessibleField.setInt(objectBeingBuilt, (int) bits);
+          break;
+        case ClassPlan.KIND_LONG:
+          accessibleField.setLong(objectBeingBuilt, bits);
+          break;
+        case ClassPlan.KIND_FLOAT:
+          accessibleField.setFloat(objectBeingBuilt, Float.intBitsToFloat((int) bits));
+          break;
+        case ClassPlan.KIND_DOUBLE:
+          accessibleField.setDouble(objectBeingBuilt, Double.longBitsToDouble(bits));
+          break;
+        default:
+          throw new IllegalArgumentException("Not a primitive kind: " + kind);
       }
-      for (Field f : explicitlyNullFields) {
-        setFieldInInstance(built, f, null);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected long readFieldBits(Object sourceObject, Field field, int kind) {
+    Field accessibleField = accessible(field);
+    try {
+      switch (kind) {
+        case ClassPlan.KIND_BOOLEAN:
+          return accessibleField.getBoolean(sourceObject) ? 1 : 0;
+        case ClassPlan.KIND_BYTE:
+          return accessibleField.getByte(sourceObject);
+        case ClassPlan.KIND_SHORT:
+          return accessibleField.getShort(sourceObject);
+        case ClassPlan.KIND_CHAR:
+          return accessibleField.getChar(sourceObject);
+        case ClassPlan.KIND_INT:
+          return accessibleField.getInt(sourceObject);
+        case ClassPlan.KIND_LONG:
+          return accessibleField.getLong(sourceObject);
+        case ClassPlan.KIND_FLOAT:
+          return Float.floatToRawIntBits(accessibleField.getFloat(sourceObject));
+        case ClassPlan.KIND_DOUBLE:
+          return Double.doubleToRawLongBits(accessibleField.getDouble(sourceObject));
+        default:
+          throw new IllegalArgumentException("Not a primitive kind: " + kind);
       }
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected Object readField(Object sourceObject, Field field) {
+    try {
+      return accessible(field).get(sourceObject);
+    } catch (IllegalArgumentException | IllegalAccessException e) {
+      throw new RuntimeException(e);
     }
-    return built;
   }
 
   /**
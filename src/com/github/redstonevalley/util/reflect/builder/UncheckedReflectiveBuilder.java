@@ -10,4 +10,8 @@ public abstract class UncheckedReflectiveBuilder<T> extends ReflectiveBuilder<T>
     super(clazz, true);
     // TODO Auto-generated constructor stub
   }
+
+  public UncheckedReflectiveBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, true, concurrencyPolicy);
+  }
 }
@@ -0,0 +1,103 @@
+package com.github.redstonevalley.util.reflect.builder.generated;
+
+/**
+ * The superclass of the hidden classes that {@link GeneratedBuilder} defines at runtime, one per
+ * built class. Each subclass invokes the built class's constructors and reads and writes its fields
+ * with ordinary bytecode, so that the JIT can inline them like a hand-written builder. Constructors
+ * are identified by their index in {@link Class#getDeclaredConstructors()}, and fields by their
+ * slot in the built class's {@link com.github.redstonevalley.util.reflect.builder.ClassPlan}.
+ *
+ * <p>The static methods are called by the generated bytecode and aren't meant for other callers.
+ *
+ * @author cryoc
+ */
+public abstract class GeneratedAccessor {
+
+  protected GeneratedAccessor() {}
+
+  /**
+   * @return A new instance created by the given constructor.
+   * @throws IllegalArgumentException if the constructor can't be called directly.
+   */
+  public abstract Object construct(int constructor, Object[] args);
+
+  /**
+   * Sets each directly accessible field of {@code target} whose slot is set in {@code isSet} to its
+   * value: from {@code values} for reference fields, or decoded from {@code bits} for primitive
+   * fields.
+   */
+  public abstract void write(Object target, Object[] values, long[] bits, boolean[] isSet);
+
+  /**
+   * Sets the field in the given slot.
+   *
+   * @throws IllegalArgumentException if the field can't be set directly.
+   */
+  public abstract void set(Object target, int slot, Object value);
+
+  /**
+   * Sets the primitive field in the given slot to a value encoded as by
+   * {@link com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder#toBits}.
+   *
+   * @throws IllegalArgumentException if the field can't be set directly or isn't primitive.
+   */
+  public abstract void setBits(Object target, int slot, long bits);
+
+  /**
+   * @return The value of the primitive field in the given slot, encoded as by
+   *         {@link com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder#toBits}.
+   * @throws IllegalArgumentException if the field can't be read directly or isn't primitive.
+   */
+  public abstract long getBits(Object source, int slot);
+
+  /**
+   * @return The value of the field in the given slot, boxed if it's primitive.
+   * @throws IllegalArgumentException if the field can't be read directly.
+   */
+  public abstract Object get(Object source, int slot);
+
+  public static RuntimeException noDirectAccess(int index) {
+    return new IllegalArgumentException("No generated access for index " + index);
+  }
+
+  public static boolean toBoolean(Object value) {
+    return (Boolean) value;
+  }
+
+  public static byte toByte(Object value) {
+    return (Byte) value;
+  }
+
+  public static short toShort(Object value) {
+    return ((Number) value).shortValue();
+  }
+
+  public static char toChar(Object value) {
+    if (value instanceof Character) {
+      return (Character) value;
+    }
+    return (char) (byte) (Byte) value;
+  }
+
+  public static int toInt(Object value) {
+    if (value instanceof Character) {
+      return (Character) value;
+    }
+    return ((Number) value).intValue();
+  }
+
+  public static long toLong(Object value) {
+    if (value instanceof Character) {
+      return (Character) value;
+    }
+    return ((Number) value).longValue();
+  }
+
+  public static float toFloat(Object value) {
+    return ((Number) value).floatValue();
+  }
+
+  public static double toDouble(Object value) {
+    return ((Number) value).doubleValue();
+  }
+}
@@ -0,0 +1,491 @@
+package com.github.redstonevalley.util.reflect.builder.generated;
+
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.ATHROW;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.BALOAD;
+import static org.objectweb.asm.Opcodes.I2B;
+import static org.objectweb.asm.Opcodes.I2C;
+import static org.objectweb.asm.Opcodes.I2L;
+import static org.objectweb.asm.Opcodes.I2S;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.L2I;
+import static org.objectweb.asm.Opcodes.LALOAD;
+import static org.objectweb.asm.Opcodes.LLOAD;
+import static org.objectweb.asm.Opcodes.LRETURN;
+import static org.objectweb.asm.Opcodes.NEW;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V17;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+
+/**
+ * The {@link GeneratedAccessor} for a class, together with which of its constructors and fields
+ * the accessor can reach. Generated once per class and shared by all {@link GeneratedBuilder}s.
+ *
+ * @author cryoc
+ */
+final class GeneratedAccessors {
+
+  private static final ClassValue<GeneratedAccessors> ACCESSORS =
+      new ClassValue<GeneratedAccessors>() {
+        @Override
+        protected GeneratedAccessors computeValue(Class<?> type) {
+          return new GeneratedAccessors(type);
+        }
+      };
+
+  private static final String ACCESSOR = Type.getInternalName(GeneratedAccessor.class);
+  private static final String OBJECT = Type.getInternalName(Object.class);
+  private static final String CONSTRUCT_DESCRIPTOR = "(I[Ljava/lang/Object;)Ljava/lang/Object;";
+  private static final String WRITE_DESCRIPTOR = "(Ljava/lang/Object;[Ljava/lang/Object;[J[Z)V";
+  private static final String SET_DESCRIPTOR = "(Ljava/lang/Object;ILjava/lang/Object;)V";
+  private static final String GET_DESCRIPTOR = "(Ljava/lang/Object;I)Ljava/lang/Object;";
+  private static final String SET_BITS_DESCRIPTOR = "(Ljava/lang/Object;IJ)V";
+  private static final String GET_BITS_DESCRIPTOR = "(Ljava/lang/Object;I)J";
+  private static final String NO_ACCESS_DESCRIPTOR = "(I)Ljava/lang/RuntimeException;";
+
+  /** Null if no accessor could be generated, in which case nothing is direct. */
+  @Nullable final GeneratedAccessor accessor;
+  final Constructor<?>[] constructors;
+  final boolean[] directConstructors;
+  final boolean[] directSlots;
+
+  private GeneratedAccessors(Class<?> clazz) {
+    ClassPlan plan = ClassPlan.of(clazz);
+    constructors = clazz.getDeclaredConstructors();
+    directConstructors = new boolean[constructors.length];
+    directSlots = new boolean[plan.size()];
+    GeneratedAccessor generated = null;
+    if (canGenerate(clazz)) {
+      for (int i = 0; i < constructors.length; i++) {
+        directConstructors[i] = isDirectlyCallable(constructors[i], clazz);
+      }
+      for (int slot = 0; slot < directSlots.length; slot++) {
+        directSlots[slot] = isDirectlyWritable(plan.getField(slot), clazz);
+      }
+      try {
+        generated = define(clazz, generate(clazz, plan));
+      } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+        // Fall back to reflection
+        generated = null;
+      }
+    }
+    accessor = generated;
+    if (accessor == null) {
+      Arrays.fill(directConstructors, false);
+      Arrays.fill(directSlots, false);
+    }
+  }
+
+  static GeneratedAccessors of(Class<?> clazz) {
+    return ACCESSORS.get(clazz);
+  }
+
+  /** @return The index of {@code constructor} if it can be called directly; -1 otherwise. */
+  int indexOf(Constructor<?> constructor) {
+    for (int i = 0; i < constructors.length; i++) {
+      if (constructors[i].equals(constructor)) {
+        return directConstructors[i] ? i : -1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean canGenerate(Class<?> clazz) {
+    return !(clazz.isPrimitive()
+        || clazz.isArray()
+        || clazz.isInterface()
+        || clazz.isHidden()
+        || Modifier.isAbstract(clazz.getModifiers()));
+  }
+
+  private static boolean isSamePackage(Class<?> a, Class<?> b) {
+    return a.getClassLoader() == b.getClassLoader() && a.getPackageName().equals(b.getPackageName());
+  }
+
+  /** @return Whether bytecode in {@code host}'s package can name {@code type}. */
+  private static boolean isAccessible(Class<?> type, Class<?> host) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type.isPrimitive() || isSamePackage(type, host)) {
+      return true;
+    }
+    return Modifier.isPublic(type.getModifiers())
+        && type.getModule().isExported(type.getPackageName(), host.getModule());
+  }
+
+  private static boolean isDirectlyCallable(Constructor<?> constructor, Class<?> host) {
+    for (Class<?> paramType : constructor.getParameterTypes()) {
+      if (!isAccessible(paramType, host)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return Whether a nestmate of {@code host} can write {@code field} with {@code putfield}. Final
+   *         fields can only be written that way from a constructor.
+   */
+  private static boolean isDirectlyWritable(Field field, Class<?> host) {
+    int modifiers = field.getModifiers();
+    if (Modifier.isFinal(modifiers)) {
+      return false;
+    }
+    Class<?> declaringClass = field.getDeclaringClass();
+    boolean memberAccessible;
+    if (declaringClass.getNestHost() == host.getNestHost()) {
+      memberAccessible = true;
+    } else if (Modifier.isPrivate(modifiers)) {
+      memberAccessible = false;
+    } else if (isSamePackage(declaringClass, host)) {
+      memberAccessible = true;
+    } else {
+      memberAccessible = Modifier.isPublic(modifiers);
+    }
+    return memberAccessible
+        && isAccessible(declaringClass, host)
+        && isAccessible(field.getType(), host);
+  }
+
+  private static GeneratedAccessor define(Class<?> clazz, byte[] bytecode)
+      throws ReflectiveOperationException {
+    MethodHandles.Lookup lookup =
+        MethodHandles.privateLookupIn(clazz, MethodHandles.lookup())
+            .defineHiddenClass(bytecode, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+    try {
+      return (GeneratedAccessor) lookup
+          .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+          .invoke();
+    } catch (ReflectiveOperationException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  private byte[] generate(Class<?> clazz, ClassPlan plan) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+      @Override
+      protected String getCommonSuperClass(String type1, String type2) {
+        return OBJECT;
+      }
+    };
+    String builtName = Type.getInternalName(clazz);
+    String name = builtName + "$$GeneratedAccessor";
+    writer.visit(V17, ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, name, null, ACCESSOR, null);
+
+    MethodVisitor init = writer.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(ALOAD, 0);
+    init.visitMethodInsn(INVOKESPECIAL, ACCESSOR, "<init>", "()V", false);
+    init.visitInsn(RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+
+    generateConstruct(writer, builtName);
+    generateWrite(writer, builtName, plan);
+    generateSet(writer, plan);
+    generateGet(writer, plan);
+    generateSetBits(writer, plan);
+    generateGetBits(writer, plan);
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private void generateConstruct(ClassWriter writer, String builtName) {
+    MethodVisitor method =
+        writer.visitMethod(ACC_PUBLIC, "construct", CONSTRUCT_DESCRIPTOR, null, null);
+    method.visitCode();
+    Label noAccess = new Label();
+    Label[] labels = switchLabels(directConstructors, noAccess);
+    method.visitVarInsn(ILOAD, 1);
+    method.visitTableSwitchInsn(0, labels.length - 1, noAccess, labels);
+    for (int i = 0; i < constructors.length; i++) {
+      if (!directConstructors[i]) {
+        continue;
+      }
+      method.visitLabel(labels[i]);
+      method.visitTypeInsn(NEW, builtName);
+      method.visitInsn(DUP);
+      Class<?>[] paramTypes = constructors[i].getParameterTypes();
+      for (int param = 0; param < paramTypes.length; param++) {
+        method.visitVarInsn(ALOAD, 2);
+        method.visitLdcInsn(param);
+        method.visitInsn(AALOAD);
+        convert(method, paramTypes[param]);
+      }
+      method.visitMethodInsn(INVOKESPECIAL, builtName, "<init>",
+          Type.getConstructorDescriptor(constructors[i]), false);
+      method.visitInsn(ARETURN);
+    }
+    throwNoAccess(method, noAccess, 1);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private void generateWrite(ClassWriter writer, String builtName, ClassPlan plan) {
+    MethodVisitor method = writer.visitMethod(ACC_PUBLIC, "write", WRITE_DESCRIPTOR, null, null);
+    method.visitCode();
+    method.visitVarInsn(ALOAD, 1);
+    method.visitTypeInsn(CHECKCAST, builtName);
+    method.visitVarInsn(ASTORE, 5);
+    for (int slot = 0; slot < directSlots.length; slot++) {
+      if (!directSlots[slot]) {
+        continue;
+      }
+      Field field = plan.getField(slot);
+      Class<?> type = field.getType();
+      Label skip = new Label();
+      method.visitVarInsn(ALOAD, 4);
+      method.visitLdcInsn(slot);
+      method.visitInsn(BALOAD);
+      method.visitJumpInsn(IFEQ, skip);
+      method.visitVarInsn(ALOAD, 5);
+      if (type.isPrimitive()) {
+        method.visitVarInsn(ALOAD, 3);
+        method.visitLdcInsn(slot);
+        method.visitInsn(LALOAD);
+        fromBits(method, type);
+      } else {
+        method.visitVarInsn(ALOAD, 2);
+        method.visitLdcInsn(slot);
+        method.visitInsn(AALOAD);
+        convert(method, type);
+      }
+      method.visitFieldInsn(PUTFIELD, Type.getInternalName(field.getDeclaringClass()),
+          field.getName(), Type.getDescriptor(type));
+      method.visitLabel(skip);
+    }
+    method.visitInsn(RETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private void generateSet(ClassWriter writer, ClassPlan plan) {
+    MethodVisitor method = writer.visitMethod(ACC_PUBLIC, "set", SET_DESCRIPTOR, null, null);
+    method.visitCode();
+    Label noAccess = new Label();
+    Label[] labels = switchLabels(directSlots, noAccess);
+    method.visitVarInsn(ILOAD, 2);
+    method.visitTableSwitchInsn(0, labels.length - 1, noAccess, labels);
+    for (int slot = 0; slot < directSlots.length; slot++) {
+      if (!directSlots[slot]) {
+        continue;
+      }
+      Field field = plan.getField(slot);
+      String owner = Type.getInternalName(field.getDeclaringClass());
+      method.visitLabel(labels[slot]);
+      method.visitVarInsn(ALOAD, 1);
+      method.visitTypeInsn(CHECKCAST, owner);
+      method.visitVarInsn(ALOAD, 3);
+      convert(method, field.getType());
+      method.visitFieldInsn(PUTFIELD, owner, field.getName(),
+          Type.getDescriptor(field.getType()));
+      method.visitInsn(RETURN);
+    }
+    throwNoAccess(method, noAccess, 2);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private void generateGet(ClassWriter writer, ClassPlan plan) {
+    MethodVisitor method = writer.visitMethod(ACC_PUBLIC, "get", GET_DESCRIPTOR, null, null);
+    method.visitCode();
+    Label noAccess = new Label();
+    Label[] labels = switchLabels(directSlots, noAccess);
+    method.visitVarInsn(ILOAD, 2);
+    method.visitTableSwitchInsn(0, labels.length - 1, noAccess, labels);
+    for (int slot = 0; slot < directSlots.length; slot++) {
+      if (!directSlots[slot]) {
+        continue;
+      }
+      Field field = plan.getField(slot);
+      String owner = Type.getInternalName(field.getDeclaringClass());
+      method.visitLabel(labels[slot]);
+      method.visitVarInsn(ALOAD, 1);
+      method.visitTypeInsn(CHECKCAST, owner);
+      method.visitFieldInsn(GETFIELD, owner, field.getName(),
+          Type.getDescriptor(field.getType()));
+      box(method, field.getType());
+      method.visitInsn(ARETURN);
+    }
+    throwNoAccess(method, noAccess, 2);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private void generateSetBits(ClassWriter writer, ClassPlan plan) {
+    boolean[] primitiveSlots = primitiveSlots(plan);
+    MethodVisitor method =
+        writer.visitMethod(ACC_PUBLIC, "setBits", SET_BITS_DESCRIPTOR, null, null);
+    method.visitCode();
+    Label noAccess = new Label();
+    Label[] labels = switchLabels(primitiveSlots, noAccess);
+    method.visitVarInsn(ILOAD, 2);
+    method.visitTableSwitchInsn(0, labels.length - 1, noAccess, labels);
+    for (int slot = 0; slot < primitiveSlots.length; slot++) {
+      if (!primitiveSlots[slot]) {
+        continue;
+      }
+      Field field = plan.getField(slot);
+      String owner = Type.getInternalName(field.getDeclaringClass());
+      method.visitLabel(labels[slot]);
+      method.visitVarInsn(ALOAD, 1);
+      method.visitTypeInsn(CHECKCAST, owner);
+      method.visitVarInsn(LLOAD, 3);
+      fromBits(method, field.getType());
+      method.visitFieldInsn(PUTFIELD, owner, field.getName(),
+          Type.getDescriptor(field.getType()));
+      method.visitInsn(RETURN);
+    }
+    throwNoAccess(method, noAccess, 2);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private void generateGetBits(ClassWriter writer, ClassPlan plan) {
+    boolean[] primitiveSlots = primitiveSlots(plan);
+    MethodVisitor method =
+        writer.visitMethod(ACC_PUBLIC, "getBits", GET_BITS_DESCRIPTOR, null, null);
+    method.visitCode();
+    Label noAccess = new Label();
+    Label[] labels = switchLabels(primitiveSlots, noAccess);
+    method.visitVarInsn(ILOAD, 2);
+    method.visitTableSwitchInsn(0, labels.length - 1, noAccess, labels);
+    for (int slot = 0; slot < primitiveSlots.length; slot++) {
+      if (!primitiveSlots[slot]) {
+        continue;
+      }
+      Field field = plan.getField(slot);
+      String owner = Type.getInternalName(field.getDeclaringClass());
+      method.visitLabel(labels[slot]);
+      method.visitVarInsn(ALOAD, 1);
+      method.visitTypeInsn(CHECKCAST, owner);
+      method.visitFieldInsn(GETFIELD, owner, field.getName(),
+          Type.getDescriptor(field.getType()));
+      toBits(method, field.getType());
+      method.visitInsn(LRETURN);
+    }
+    throwNoAccess(method, noAccess, 2);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  /** @return Which of {@link #directSlots} hold primitive fields. */
+  private boolean[] primitiveSlots(ClassPlan plan) {
+    boolean[] primitiveSlots = new boolean[directSlots.length];
+    for (int slot = 0; slot < primitiveSlots.length; slot++) {
+      primitiveSlots[slot] = directSlots[slot] && plan.getKind(slot) != ClassPlan.KIND_OBJECT;
+    }
+    return primitiveSlots;
+  }
+
+  /**
+   * @return Labels for a {@code tableswitch} over {@code direct}, with the indices that aren't
+   *         direct sent to {@code noAccess}. Always has at least one entry.
+   */
+  private static Label[] switchLabels(boolean[] direct, Label noAccess) {
+    Label[] labels = new Label[Math.max(1, direct.length)];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = (i < direct.length && direct[i]) ? new Label() : noAccess;
+    }
+    return labels;
+  }
+
+  private static void throwNoAccess(MethodVisitor method, Label noAccess, int indexVar) {
+    method.visitLabel(noAccess);
+    method.visitVarInsn(ILOAD, indexVar);
+    method.visitMethodInsn(INVOKESTATIC, ACCESSOR, "noDirectAccess", NO_ACCESS_DESCRIPTOR, false);
+    method.visitInsn(ATHROW);
+  }
+
+  /** Converts the {@link Object} on top of the stack to {@code type}, unboxing if necessary. */
+  private static void convert(MethodVisitor method, Class<?> type) {
+    if (type.isPrimitive()) {
+      String helper = "to" + Character.toUpperCase(type.getName().charAt(0))
+          + type.getName().substring(1);
+      method.visitMethodInsn(INVOKESTATIC, ACCESSOR, helper,
+          "(Ljava/lang/Object;)" + Type.getDescriptor(type), false);
+    } else if (!type.equals(Object.class)) {
+      method.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+    }
+  }
+
+  /**
+   * Converts the {@code long} on top of the stack, encoded as by
+   * {@link com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder#toBits}, to the
+   * primitive {@code type}.
+   */
+  private static void fromBits(MethodVisitor method, Class<?> type) {
+    if (type.equals(long.class)) {
+      return;
+    } else if (type.equals(double.class)) {
+      method.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+      return;
+    }
+    method.visitInsn(L2I);
+    if (type.equals(byte.class)) {
+      method.visitInsn(I2B);
+    } else if (type.equals(short.class)) {
+      method.visitInsn(I2S);
+    } else if (type.equals(char.class)) {
+      method.visitInsn(I2C);
+    } else if (type.equals(float.class)) {
+      method.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+    }
+  }
+
+  /** The inverse of {@link #fromBits(MethodVisitor, Class)}. */
+  private static void toBits(MethodVisitor method, Class<?> type) {
+    if (type.equals(long.class)) {
+      return;
+    } else if (type.equals(double.class)) {
+      method.visitMethodInsn(
+          INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+      return;
+    } else if (type.equals(float.class)) {
+      method.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+    }
+    method.visitInsn(I2L);
+  }
+
+  /** Boxes the value of type {@code type} on top of the stack, if it's primitive. */
+  private static void box(MethodVisitor method, Class<?> type) {
+    if (type.isPrimitive()) {
+      Type boxed = Type.getType(MethodType.methodType(type).wrap().returnType());
+      method.visitMethodInsn(INVOKESTATIC, boxed.getInternalName(), "valueOf",
+          "(" + Type.getDescriptor(type) + ")" + boxed.getDescriptor(), false);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.github.redstonevalley.util.reflect.builder.generated;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ConstructingBuilder;
+import com.github.redstonevalley.util.reflect.builder.SlotValues;
+
+/**
+ * A {@link ConstructingBuilder} that invokes the constructor and writes fields through a
+ * {@link GeneratedAccessor}: a hidden class, defined once per built class as a nestmate of it, that
+ * does so with plain bytecode instead of {@link Constructor#newInstance} and {@link Field#set}.
+ * Wherever the accessor can't be generated or can't reach a member (final fields, and members or
+ * types that the built class's package can't access), this falls back to reflection.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this builder builds.
+ */
+public class GeneratedBuilder<T> extends ConstructingBuilder<T> {
+
+  private final GeneratedAccessors accessors;
+  protected final int constructorIndex;
+
+  public GeneratedBuilder(Class<T> clazz, Constructor<T> constructor) {
+    this(clazz, constructor, ConcurrencyPolicy.MONITOR);
+  }
+
+  public GeneratedBuilder(Class<T> clazz, Constructor<T> constructor,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, constructor, concurrencyPolicy);
+    accessors = GeneratedAccessors.of(clazz);
+    constructorIndex = accessors.indexOf(constructor);
+  }
+
+  /** @return Whether the constructor is invoked through the generated accessor. */
+  public boolean isGenerated() {
+    return constructorIndex >= 0;
+  }
+
+  /** @return The slot of {@code field} if the generated accessor can write it; -1 otherwise. */
+  protected int directSlot(Field field) {
+    int slot = plan.slotOf(field);
+    return (slot >= 0 && accessors.directSlots[slot]) ? slot : -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected T allocateInstance(Object allocationState) {
+    if (constructorIndex < 0) {
+      return super.allocateInstance(allocationState);
+    }
+    return (T) accessors.accessor.construct(constructorIndex, (Object[]) allocationState);
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, @Nullable Object value) {
+    int slot = directSlot(field);
+    if (slot < 0) {
+      super.setFieldInInstance(objectBeingBuilt, field, value);
+    } else {
+      accessors.accessor.set(objectBeingBuilt, slot, value);
+    }
+  }
+
+  /** @return The field's slot if it's directly writable, since that's what the accessor needs. */
+  @Override
+  protected long getFieldOffset(Field field) {
+    return directSlot(field);
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      @Nullable Object value) {
+    if (fieldOffset < 0) {
+      super.setFieldInInstance(objectBeingBuilt, field, fieldOffset, kind, value);
+    } else {
+      accessors.accessor.set(objectBeingBuilt, (int) fieldOffset, value);
+    }
+  }
+
+  @Override
+  protected void putPrimitive(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      long bits) {
+    if (fieldOffset < 0) {
+      super.putPrimitive(objectBeingBuilt, field, fieldOffset, kind, bits);
+    } else {
+      accessors.accessor.setBits(objectBeingBuilt, (int) fieldOffset, bits);
+    }
+  }
+
+  @Override
+  protected Object readField(Object sourceObject, Field field) {
+    int slot = sourceObject.getClass() == clazz ? directSlot(field) : -1;
+    if (slot < 0) {
+      return super.readField(sourceObject, field);
+    }
+    return accessors.accessor.get(sourceObject, slot);
+  }
+
+  @Override
+  protected long readFieldBits(Object sourceObject, Field field, int kind) {
+    int slot = sourceObject.getClass() == clazz ? directSlot(field) : -1;
+    if (slot < 0) {
+      return super.readFieldBits(sourceObject, field, kind);
+    }
+    return accessors.accessor.getBits(sourceObject, slot);
+  }
+
+  /**
+   * {@inheritDoc} Calls the constructor with a copy of its arguments, taken as {@link #compile()}
+   * takes one. {@link #build()} calls this before taking this builder's lock, so setters never wait
+   * for the constructor.
+   */
+  @Override
+  protected T allocateInstance() {
+    return allocateInstance(snapshotAllocationState());
+  }
+
+  /** {@inheritDoc} Writes the directly accessible fields with a single call to the accessor. */
+  @Override
+  protected void writeFields(T built, SlotValues configured) {
+    if (accessors.accessor == null) {
+      super.writeFields(built, configured);
+      return;
+    }
+    accessors.accessor.write(built, configured.values, configured.bits, configured.isSet);
+    long[] offsets = getSlotOffsets();
+    for (int slot = 0; slot < offsets.length; slot++) {
+      if (configured.isSet[slot] && offsets[slot] < 0) {
+        writeSlot(built, configured, slot, offsets[slot]);
+      }
+    }
+    writeOtherFields(built, configured);
+  }
+}
@@ -0,0 +1,186 @@
+package com.github.redstonevalley.util.reflect.builder.invoke;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+
+/**
+ * A {@link ReflectiveBuilder} that sets fields through {@link VarHandle}s and allocates instances
+ * without running a constructor, like the {@link com.github.redstonevalley.util.reflect.builder.sun
+ * sun.misc.Unsafe builders} but using only supported APIs for field access.
+ *
+ * <p>Unlike those builders, this one doesn't allow type punning, since a {@link VarHandle} checks
+ * that its receiver is an instance of the field's declaring class. Final fields, which a
+ * {@link VarHandle} can't write, are set by reflection instead.
+ *
+ * @author cryoc
+ *
+ * @param <T> The class that this builder builds.
+ */
+public class VarHandleBuilder<T> extends ReflectiveBuilder<T> {
+
+  protected final VarHandleLayout layout;
+
+  public VarHandleBuilder(Class<T> clazz) {
+    this(clazz, ConcurrencyPolicy.MONITOR);
+  }
+
+  public VarHandleBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, false, concurrencyPolicy);
+    layout = VarHandleLayout.of(clazz);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  protected T allocateInstance() throws InstantiationException {
+    if (layout.allocator == null) {
+      throw new InstantiationException("Can't allocate " + clazz + " without a constructor");
+    }
+    try {
+      return (T) (Object) layout.allocator.invokeExact();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      InstantiationException exception = new InstantiationException(t.toString());
+      exception.initCause(t);
+      throw exception;
+    }
+  }
+
+  @Override
+  protected boolean allocatesWithoutConstructor() {
+    return layout.allocator != null;
+  }
+
+  @Override
+  protected long getFieldOffset(Field field) {
+    return plan.slotOf(field);
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, @Nullable Object value) {
+    int slot = plan.slotOf(field);
+    if (slot < 0) {
+      setByReflection(objectBeingBuilt, accessible(field, plan, slot), value);
+    } else {
+      setFieldInInstance(objectBeingBuilt, field, slot, plan.getKind(slot), value);
+    }
+  }
+
+  /** Uses the field's slot as its offset. */
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      @Nullable Object value) {
+    int slot = (int) fieldOffset;
+    if (slot < 0 || layout.setters[slot] == null) {
+      setByReflection(objectBeingBuilt, accessible(field, plan, slot), value);
+    } else if (kind == ClassPlan.KIND_OBJECT) {
+      invoke(layout.setters[slot], objectBeingBuilt, value);
+    } else {
+      putPrimitive(objectBeingBuilt, field, fieldOffset, kind, toBits(kind, value));
+    }
+  }
+
+  /** Uses the layout's handle for the field's bits, which doesn't box. */
+  @Override
+  protected void putPrimitive(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      long bits) {
+    int slot = (int) fieldOffset;
+    MethodHandle setter = slot < 0 ? null : layout.bitsSetters[slot];
+    if (setter == null) {
+      super.putPrimitive(objectBeingBuilt, field, fieldOffset, kind, bits);
+      return;
+    }
+    try {
+      setter.invokeExact((Object) objectBeingBuilt, bits);
+    } catch (Throwable t) {
+      throw unchecked(t);
+    }
+  }
+
+  /** Uses the layout's handle for the field's bits, which doesn't box, if it's in this class. */
+  @Override
+  protected long readFieldBits(Object sourceObject, Field field, int kind) {
+    int slot = sourceObject.getClass() == clazz ? plan.slotOf(field) : -1;
+    MethodHandle getter = slot < 0 ? null : layout.bitsGetters[slot];
+    if (getter == null) {
+      return super.readFieldBits(sourceObject, field, kind);
+    }
+    try {
+      return (long) getter.invokeExact(sourceObject);
+    } catch (Throwable t) {
+      throw unchecked(t);
+    }
+  }
+
+  /**
+   * @return The plan's accessible copy of {@code field} if it has a slot; otherwise a new accessible
+   *         copy of it, so that the caller's field is left as it was.
+   */
+  private static Field accessible(Field field, ClassPlan plan, int slot) {
+    if (slot >= 0) {
+      return plan.getAccessibleField(slot);
+    }
+    try {
+      Field copy = field.getDeclaringClass().getDeclaredField(field.getName());
+      copy.setAccessible(true);
+      return copy;
+    } catch (NoSuchFieldException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Sets a field that's already accessible. */
+  private static void setByReflection(Object objectBeingBuilt, Field field,
+      @Nullable Object value) {
+    try {
+      field.set(objectBeingBuilt, value);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected Object readField(Object sourceObject, Field field) {
+    VarHandleLayout sourceLayout = VarHandleLayout.of(field.getDeclaringClass());
+    int slot = sourceLayout.plan.slotOf(field);
+    MethodHandle getter = slot < 0 ? null : sourceLayout.getters[slot];
+    if (getter == null) {
+      try {
+        return accessible(field, sourceLayout.plan, slot).get(sourceObject);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    try {
+      return getter.invokeExact(sourceObject);
+    } catch (Throwable t) {
+      throw unchecked(t);
+    }
+  }
+
+  private static void invoke(MethodHandle setter, Object target, @Nullable Object value) {
+    try {
+      setter.invokeExact(target, value);
+    } catch (Throwable t) {
+      throw unchecked(t);
+    }
+  }
+
+  /**
+   * @return {@code t} if it's a {@link RuntimeException}, or else {@code t} wrapped in one, for the
+   *         caller to throw. An {@link Error} is thrown as it is.
+   */
+  private static RuntimeException unchecked(Throwable t) {
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+  }
+}
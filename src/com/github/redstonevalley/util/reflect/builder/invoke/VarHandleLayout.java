@@ -0,0 +1,192 @@
+package com.github.redstonevalley.util.reflect.builder.invoke;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+
+/**
+ * The {@link VarHandle}s for the slots of a {@link ClassPlan}, and a {@link MethodHandle} that
+ * allocates the class without running any of its constructors. Computed once per class and shared
+ * by all {@link VarHandleBuilder}s.
+ *
+ * <p>Alongside each {@link VarHandle}, this keeps method handles for its get and set access modes
+ * adapted to an {@link Object} receiver, so that callers can use
+ * {@link MethodHandle#invokeExact} without knowing the class at compile time. Primitive fields
+ * also get handles that read and write the raw bits that {@link ReflectiveBuilder} keeps for them,
+ * so values needn't be boxed.
+ *
+ * <p>Since these handles are loaded from arrays rather than static final fields, the JIT can't
+ * treat them as constants, and each access is an indirect call; this is faster than reflection,
+ * but not as fast as {@link sun.misc.Unsafe} or the accessors of
+ * {@link com.github.redstonevalley.util.reflect.builder.generated.GeneratedBuilder}.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+final class VarHandleLayout {
+
+  private static final MethodHandle FLOAT_TO_BITS =
+      findStatic(Float.class, "floatToRawIntBits", int.class, float.class);
+  private static final MethodHandle DOUBLE_TO_BITS =
+      findStatic(Double.class, "doubleToRawLongBits", long.class, double.class);
+  private static final MethodHandle BITS_TO_BOOLEAN =
+      findStatic(VarHandleLayout.class, "isNonZero", boolean.class, long.class);
+  private static final MethodHandle BITS_TO_FLOAT =
+      findStatic(Float.class, "intBitsToFloat", float.class, int.class);
+  private static final MethodHandle BITS_TO_DOUBLE =
+      findStatic(Double.class, "longBitsToDouble", double.class, long.class);
+
+  private static final ClassValue<VarHandleLayout> LAYOUTS = new ClassValue<VarHandleLayout>() {
+    @Override
+    protected VarHandleLayout computeValue(Class<?> type) {
+      return new VarHandleLayout(type);
+    }
+  };
+
+  final ClassPlan plan;
+
+  /** Null for a field that can't be accessed through a {@link VarHandle}. */
+  final VarHandle[] handles;
+
+  /** {@code (Object)Object}; null where {@link #handles} is null. */
+  final MethodHandle[] getters;
+
+  /** {@code (Object,Object)void}; null where the field is final or inaccessible. */
+  final MethodHandle[] setters;
+
+  /** {@code (Object)long}; null for reference fields and where {@link #getters} is null. */
+  final MethodHandle[] bitsGetters;
+
+  /** {@code (Object,long)void}; null for reference fields and where {@link #setters} is null. */
+  final MethodHandle[] bitsSetters;
+
+  /** {@code ()Object}; null if this JVM can't allocate the class without a constructor. */
+  @Nullable final MethodHandle allocator;
+
+  private VarHandleLayout(Class<?> clazz) {
+    plan = ClassPlan.of(clazz);
+    int size = plan.size();
+    handles = new VarHandle[size];
+    getters = new MethodHandle[size];
+    setters = new MethodHandle[size];
+    bitsGetters = new MethodHandle[size];
+    bitsSetters = new MethodHandle[size];
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    for (int slot = 0; slot < size; slot++) {
+      Field field = plan.getField(slot);
+      VarHandle handle;
+      try {
+        handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), lookup)
+            .unreflectVarHandle(field);
+      } catch (IllegalAccessException | RuntimeException e) {
+        continue;
+      }
+      handles[slot] = handle;
+      Class<?> type = field.getType();
+      boolean writable = !Modifier.isFinal(field.getModifiers());
+      MethodHandle get = handle.toMethodHandle(VarHandle.AccessMode.GET);
+      getters[slot] = get.asType(MethodType.methodType(Object.class, Object.class));
+      MethodHandle set = writable ? handle.toMethodHandle(VarHandle.AccessMode.SET) : null;
+      if (set != null) {
+        setters[slot] =
+            set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+      }
+      if (type.isPrimitive()) {
+        bitsGetters[slot] = MethodHandles.filterReturnValue(
+            get.asType(MethodType.methodType(type, Object.class)), toBits(type));
+        if (set != null) {
+          bitsSetters[slot] = MethodHandles.filterArguments(
+              set.asType(MethodType.methodType(void.class, Object.class, type)), 1,
+              fromBits(type));
+        }
+      }
+    }
+    allocator = findAllocator(clazz);
+  }
+
+  static VarHandleLayout of(Class<?> clazz) {
+    return LAYOUTS.get(clazz);
+  }
+
+  /**
+   * @return {@code (p)long}, which converts a value of the primitive type p to its raw bits as
+   *         {@link ReflectiveBuilder#toBits} does.
+   */
+  private static MethodHandle toBits(Class<?> type) {
+    MethodType toLong = MethodType.methodType(long.class, type);
+    if (type == float.class) {
+      return MethodHandles.explicitCastArguments(FLOAT_TO_BITS, toLong);
+    } else if (type == double.class) {
+      return DOUBLE_TO_BITS;
+    }
+    // Widens as Java does; a boolean becomes 1 or 0.
+    return MethodHandles.explicitCastArguments(MethodHandles.identity(type), toLong);
+  }
+
+  /**
+   * @return {@code (long)p}, which converts raw bits to a value of the primitive type p as
+   *         {@link ReflectiveBuilder#fromBits} does.
+   */
+  private static MethodHandle fromBits(Class<?> type) {
+    MethodType fromLong = MethodType.methodType(type, long.class);
+    if (type == boolean.class) {
+      return BITS_TO_BOOLEAN;
+    } else if (type == float.class) {
+      return MethodHandles.explicitCastArguments(BITS_TO_FLOAT, fromLong);
+    } else if (type == double.class) {
+      return BITS_TO_DOUBLE;
+    }
+    // Narrows as Java does.
+    return MethodHandles.explicitCastArguments(MethodHandles.identity(long.class), fromLong);
+  }
+
+  private static boolean isNonZero(long bits) {
+    return bits != 0;
+  }
+
+  private static MethodHandle findStatic(Class<?> owner, String name, Class<?> returnType,
+      Class<?> parameterType) {
+    try {
+      return MethodHandles.lookup().findStatic(
+          owner, name, MethodType.methodType(returnType, parameterType));
+    } catch (ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return A handle that calls {@code newInstance()} on a serialization constructor for
+   *         {@code clazz}, which allocates it while running only {@link Object}'s constructor; or
+   *         null if this JVM provides no such constructor.
+   */
+  @Nullable
+  private static MethodHandle findAllocator(Class<?> clazz) {
+    if (clazz.isInterface() || clazz.isArray() || clazz.isPrimitive()
+        || Modifier.isAbstract(clazz.getModifiers())) {
+      return null;
+    }
+    try {
+      Constructor<?> constructor = sun.reflect.ReflectionFactory.getReflectionFactory()
+          .newConstructorForSerialization(clazz, Object.class.getDeclaredConstructor());
+      if (constructor == null) {
+        return null;
+      }
+      MethodHandle newInstance = MethodHandles.lookup().findVirtual(
+          Constructor.class,
+          "newInstance",
+          MethodType.methodType(Object.class, Object[].class));
+      return MethodHandles.insertArguments(newInstance, 0, constructor, new Object[0]);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return null;
+    }
+  }
+}
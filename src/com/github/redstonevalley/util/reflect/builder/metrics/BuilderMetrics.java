@@ -0,0 +1,38 @@
+package com.github.redstonevalley.util.reflect.builder.metrics;
+
+/**
+ * Receives measurements of {@link com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder}
+ * operations while {@link Instrumentation#ENABLED} is true. Implementations are called on the hot
+ * path, from any number of threads at once, so they must be thread-safe and cheap.
+ *
+ * @author cryoc
+ */
+public interface BuilderMetrics {
+
+  /** The timed operations. */
+  enum Operation {
+    /** A call to {@code build()}, including allocation, locking and field writes. */
+    BUILD,
+    /** A call to a {@code setField} or {@code set<Primitive>} method, including its type check. */
+    FIELD_WRITE,
+    /** A call to {@code clone} or {@code cloneSharedFields}. */
+    CLONE,
+    /**
+     * A wait for a builder's monitor that took longer than
+     * {@link Instrumentation#CONTENDED_LOCK_NANOS}, which is taken to mean it was contended.
+     */
+    CONTENDED_LOCK,
+    /** An update under copy-on-write that was retried because another update got in first. */
+    RETRIED_UPDATE
+  }
+
+  /**
+   * Records one operation on a builder for {@code builtClass}.
+   *
+   * @param nanos How long the operation took.
+   */
+  void record(Class<?> builtClass, Operation operation, long nanos);
+
+  /** Records that a builder for {@code builtClass} couldn't allocate an instance. */
+  void allocationFailed(Class<?> builtClass, Throwable cause);
+}
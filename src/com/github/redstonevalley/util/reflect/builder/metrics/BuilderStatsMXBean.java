@@ -0,0 +1,43 @@
+package com.github.redstonevalley.util.reflect.builder.metrics;
+
+/**
+ * The statistics that {@link JmxBuilderMetrics} publishes for each built class. Each
+ * {@code *Histogram} attribute is the bucket counts of a {@link LatencyHistogram}.
+ *
+ * @author cryoc
+ */
+public interface BuilderStatsMXBean {
+
+  String getBuiltClass();
+
+  long getBuildCount();
+
+  long getBuildTotalNanos();
+
+  long[] getBuildHistogram();
+
+  long getFieldWriteCount();
+
+  long getFieldWriteTotalNanos();
+
+  long[] getFieldWriteHistogram();
+
+  long getCloneCount();
+
+  long getCloneTotalNanos();
+
+  long[] getCloneHistogram();
+
+  long getContendedLockCount();
+
+  long getContendedLockTotalNanos();
+
+  long[] getContendedLockHistogram();
+
+  long getRetriedUpdateCount();
+
+  long getAllocationFailureCount();
+
+  /** Clears every statistic. */
+  void reset();
+}
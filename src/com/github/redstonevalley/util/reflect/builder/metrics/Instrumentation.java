@@ -0,0 +1,75 @@
+package com.github.redstonevalley.util.reflect.builder.metrics;
+
+import com.github.redstonevalley.util.reflect.builder.metrics.BuilderMetrics.Operation;
+
+/**
+ * The switch and the hooks through which builders report to a {@link BuilderMetrics}. Every call
+ * site tests {@link #ENABLED} first; since it's a constant, the JIT removes the instrumentation
+ * entirely, timing calls included, when it's false.
+ *
+ * @author cryoc
+ */
+public final class Instrumentation {
+
+  /** The system property that turns instrumentation on. */
+  public static final String ENABLED_PROPERTY =
+      "com.github.redstonevalley.util.reflect.builder.metrics";
+
+  /** Whether builders report to {@link #getMetrics()}. Read once, when this class is loaded. */
+  public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /** The shortest wait for a builder's monitor that's recorded as contended. */
+  public static final long CONTENDED_LOCK_NANOS = 1000;
+
+  private static volatile BuilderMetrics metrics;
+
+  private Instrumentation() {}
+
+  /**
+   * @return The sink that builders report to: whatever was last passed to
+   *         {@link #setMetrics(BuilderMetrics)}, or else a {@link JmxBuilderMetrics}.
+   */
+  public static BuilderMetrics getMetrics() {
+    BuilderMetrics current = metrics;
+    if (current == null) {
+      synchronized (Instrumentation.class) {
+        current = metrics;
+        if (current == null) {
+          current = new JmxBuilderMetrics();
+          metrics = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /** Replaces the sink that builders report to. Has no effect unless {@link #ENABLED}. */
+  public static void setMetrics(BuilderMetrics newMetrics) {
+    metrics = newMetrics;
+  }
+
+  /** @return The start time to pass to the other hooks, or 0 if not {@link #ENABLED}. */
+  public static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /** Records an operation that began at {@code startNanos}, a time from {@link #start()}. */
+  public static void record(Class<?> builtClass, Operation operation, long startNanos) {
+    getMetrics().record(builtClass, operation, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Called just after acquiring a builder's monitor, having started waiting for it at
+   * {@code startNanos}.
+   */
+  public static void lockAcquired(Class<?> builtClass, long startNanos) {
+    long waited = System.nanoTime() - startNanos;
+    if (waited >= CONTENDED_LOCK_NANOS) {
+      getMetrics().record(builtClass, Operation.CONTENDED_LOCK, waited);
+    }
+  }
+
+  public static void allocationFailed(Class<?> builtClass, Throwable cause) {
+    getMetrics().allocationFailed(builtClass, cause);
+  }
+}
@@ -0,0 +1,218 @@
+package com.github.redstonevalley.util.reflect.builder.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The default {@link BuilderMetrics}, which keeps a {@link BuilderStatsMXBean} per built class and
+ * registers it with the platform MBean server as
+ * {@code com.github.redstonevalley.util.reflect.builder:type=BuilderStats,class=<class name>}.
+ * If registration fails, the statistics are still kept, and can be read with
+ * {@link #getStats(Class)}.
+ *
+ * <p>The MBeans hold only the name of their class and a weak reference to it, so they don't keep it
+ * or its class loader reachable. Whoever owns a class loader that's going away should still call
+ * {@link #unregister(Class)} for its classes, or {@link #close()}, so that their MBeans don't
+ * accumulate in the server.
+ *
+ * @author cryoc
+ */
+public class JmxBuilderMetrics implements BuilderMetrics, AutoCloseable {
+
+  public static final String DOMAIN = "com.github.redstonevalley.util.reflect.builder";
+
+  /** The MBeans that this registered, by name. */
+  private final Map<ObjectName, BuilderStatsMXBean> registered = new ConcurrentHashMap<>();
+
+  private final ClassValue<Stats> stats = new ClassValue<Stats>() {
+    @Override
+    protected Stats computeValue(Class<?> builtClass) {
+      Stats classStats = new Stats(builtClass);
+      register(classStats);
+      return classStats;
+    }
+  };
+
+  /** The statistics for one built class. */
+  private static final class Stats implements BuilderStatsMXBean {
+    final String builtClassName;
+    final WeakReference<Class<?>> builtClass;
+    final EnumMap<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+    final LongAdder allocationFailures = new LongAdder();
+
+    Stats(Class<?> builtClass) {
+      builtClassName = builtClass.getName();
+      this.builtClass = new WeakReference<>(builtClass);
+      for (Operation operation : Operation.values()) {
+        histograms.put(operation, new LatencyHistogram());
+      }
+    }
+
+    @Override
+    public String getBuiltClass() {
+      return builtClassName;
+    }
+
+    @Override
+    public long getBuildCount() {
+      return histograms.get(Operation.BUILD).getCount();
+    }
+
+    @Override
+    public long getBuildTotalNanos() {
+      return histograms.get(Operation.BUILD).getTotalNanos();
+    }
+
+    @Override
+    public long[] getBuildHistogram() {
+      return histograms.get(Operation.BUILD).getBuckets();
+    }
+
+    @Override
+    public long getFieldWriteCount() {
+      return histograms.get(Operation.FIELD_WRITE).getCount();
+    }
+
+    @Override
+    public long getFieldWriteTotalNanos() {
+      return histograms.get(Operation.FIELD_WRITE).getTotalNanos();
+    }
+
+    @Override
+    public long[] getFieldWriteHistogram() {
+      return histograms.get(Operation.FIELD_WRITE).getBuckets();
+    }
+
+    @Override
+    public long getCloneCount() {
+      return histograms.get(Operation.CLONE).getCount();
+    }
+
+    @Override
+    public long getCloneTotalNanos() {
+      return histograms.get(Operation.CLONE).getTotalNanos();
+    }
+
+    @Override
+    public long[] getCloneHistogram() {
+      return histograms.get(Operation.CLONE).getBuckets();
+    }
+
+    @Override
+    public long getContendedLockCount() {
+      return histograms.get(Operation.CONTENDED_LOCK).getCount();
+    }
+
+    @Override
+    public long getContendedLockTotalNanos() {
+      return histograms.get(Operation.CONTENDED_LOCK).getTotalNanos();
+    }
+
+    @Override
+    public long[] getContendedLockHistogram() {
+      return histograms.get(Operation.CONTENDED_LOCK).getBuckets();
+    }
+
+    @Override
+    public long getRetriedUpdateCount() {
+      return histograms.get(Operation.RETRIED_UPDATE).getCount();
+    }
+
+    @Override
+    public long getAllocationFailureCount() {
+      return allocationFailures.sum();
+    }
+
+    @Override
+    public void reset() {
+      for (LatencyHistogram histogram : histograms.values()) {
+        histogram.reset();
+      }
+      allocationFailures.reset();
+    }
+  }
+
+  @Override
+  public void record(Class<?> builtClass, Operation operation, long nanos) {
+    stats.get(builtClass).histograms.get(operation).record(nanos);
+  }
+
+  @Override
+  public void allocationFailed(Class<?> builtClass, Throwable cause) {
+    stats.get(builtClass).allocationFailures.increment();
+  }
+
+  /** @return The statistics kept for {@code builtClass}. */
+  public BuilderStatsMXBean getStats(Class<?> builtClass) {
+    return stats.get(builtClass);
+  }
+
+  /** Registers a class's statistics with the platform MBean server, if possible. */
+  protected void register(BuilderStatsMXBean classStats) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = objectName(classStats.getBuiltClass());
+      if (!server.isRegistered(name)) {
+        server.registerMBean(classStats, name);
+        registered.put(name, classStats);
+      }
+    } catch (JMException | SecurityException e) {
+      // The statistics are still available through getStats.
+    }
+  }
+
+  /**
+   * Drops the statistics kept for {@code builtClass}, and unregisters their MBean if this
+   * registered it. If the class is built again, its statistics start afresh.
+   */
+  public void unregister(Class<?> builtClass) {
+    // Unlike get, remove doesn't compute statistics for a class that was never built; and removing
+    // them first means that if the class is built again meanwhile, it starts afresh.
+    stats.remove(builtClass);
+    ObjectName name;
+    try {
+      name = objectName(builtClass.getName());
+    } catch (JMException e) {
+      return;
+    }
+    BuilderStatsMXBean classStats = registered.get(name);
+    // A class of the same name from another class loader has the same MBean name.
+    if (classStats instanceof Stats && ((Stats) classStats).builtClass.get() == builtClass) {
+      unregister(name, classStats);
+    }
+  }
+
+  /**
+   * Unregisters every MBean that this registered. The statistics are still kept, and can be read
+   * with {@link #getStats(Class)}, but only those of classes first built afterwards are registered.
+   */
+  @Override
+  public void close() {
+    for (Map.Entry<ObjectName, BuilderStatsMXBean> entry : registered.entrySet()) {
+      unregister(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void unregister(ObjectName name, BuilderStatsMXBean classStats) {
+    if (!registered.remove(name, classStats)) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException | SecurityException e) {
+      // Already unregistered by someone else.
+    }
+  }
+
+  private static ObjectName objectName(String builtClassName) throws JMException {
+    return new ObjectName(DOMAIN + ":type=BuilderStats,class=" + ObjectName.quote(builtClassName));
+  }
+}
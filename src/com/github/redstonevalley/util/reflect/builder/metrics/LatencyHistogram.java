@@ -0,0 +1,62 @@
+package com.github.redstonevalley.util.reflect.builder.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, with one bucket per power of two nanoseconds. Bucket 0 counts
+ * durations of 0ns, and bucket {@code i} durations from 2<sup>i-1</sup> up to but not including
+ * 2<sup>i</sup>ns; the last bucket also counts everything longer.
+ *
+ * @author cryoc
+ */
+public final class LatencyHistogram {
+
+  /** The number of buckets, which reaches about 9 minutes. */
+  public static final int BUCKETS = 40;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder totalNanos = new LongAdder();
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  public void record(long nanos) {
+    long clamped = Math.max(nanos, 0);
+    buckets[Math.min(64 - Long.numberOfLeadingZeros(clamped), BUCKETS - 1)].increment();
+    totalNanos.add(clamped);
+  }
+
+  /** @return The number of durations recorded. */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /** @return The sum of the durations recorded. */
+  public long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  /** @return The count in each bucket. */
+  public long[] getBuckets() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return counts;
+  }
+
+  /** Clears the histogram. Durations recorded concurrently may or may not be cleared. */
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    totalNanos.reset();
+  }
+}
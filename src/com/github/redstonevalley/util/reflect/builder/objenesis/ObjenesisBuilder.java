@@ -2,6 +2,7 @@ package com.github.redstonevalley.util.reflect.builder.objenesis;
 
 import org.objenesis.instantiator.ObjectInstantiator;
 
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
 import com.github.redstonevalley.util.reflect.builder.TypeCheckedReflectiveBuilder;
 
 /**
@@ -17,7 +18,12 @@ public class ObjenesisBuilder<T> extends TypeCheckedReflectiveBuilder<T> {
   protected final ObjectInstantiator<T> instantiator;
   
   public ObjenesisBuilder(Class<T> clazz, ObjectInstantiator<T> instantiator) {
-    super(clazz);
+    this(clazz, instantiator, ConcurrencyPolicy.MONITOR);
+  }
+
+  public ObjenesisBuilder(Class<T> clazz, ObjectInstantiator<T> instantiator,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, concurrencyPolicy);
     this.instantiator = instantiator;
   }
 
@@ -25,4 +31,9 @@ public class ObjenesisBuilder<T> extends TypeCheckedReflectiveBuilder<T> {
   protected T allocateInstance() {
     return instantiator.newInstance();
   }
+
+  @Override
+  protected boolean allocatesWithoutConstructor() {
+    return true;
+  }
 }
@@ -0,0 +1,299 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.annotation.Nullable;
+
+/**
+ * Makes deep copies of object graphs with {@link sun.misc.Unsafe}, using the same per-class
+ * {@link UnsafeLayout}s as the {@link SunMiscUnsafeBuilder}s. Each object is allocated without
+ * running a constructor, and its fields are copied as {@link SunMiscUnsafeBuilder#fastClone} copies
+ * them, except that references are replaced with references to copies.
+ *
+ * <p>The graph is walked with an explicit worklist, so long chains such as linked lists can't
+ * overflow the stack. Every object is copied exactly once, however many times it's referenced, so
+ * cycles and shared references are preserved. Arrays are copied element by element. Instances of
+ * immutable or JVM-bound types (see {@link #isShared(Class)}) aren't copied at all; the copy refers
+ * to the original. Records and instances of hidden classes, such as lambdas, are shared too, since
+ * {@code Unsafe} can't locate their fields, so whatever they refer to is shared along with them.
+ *
+ * <p>Since no constructors or {@code hashCode} methods run, hash-based collections keep their
+ * original bucket layout; those keyed by identity hash, such as {@link java.util.IdentityHashMap},
+ * won't find copied keys. Such types should be passed to the constructor to be shared instead.
+ *
+ * <p>A cloner is thread-safe and can be shared.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+public class DeepCloner {
+
+  /** Classes whose instances are immutable, and so are shared rather than copied. */
+  private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<>(Arrays.<Class<?>>asList(
+      String.class, Boolean.class, Byte.class, Short.class, Character.class, Integer.class,
+      Long.class, Float.class, Double.class, Class.class, BigInteger.class, BigDecimal.class,
+      UUID.class));
+
+  /**
+   * Types whose instances are tied to the JVM or to the garbage collector, and so can't be copied
+   * field by field.
+   */
+  private static final Class<?>[] JVM_BOUND_TYPES = {
+    Thread.class, ThreadGroup.class, ClassLoader.class, Reference.class, AccessibleObject.class
+  };
+
+  /** The smallest worklist that a parallel copy splits between tasks. */
+  protected static final int SPLIT_THRESHOLD = 256;
+
+  /** The number of independently locked parts of the identity map in a parallel copy. */
+  private static final int STRIPES = 64;
+
+  private final Class<?>[] sharedTypes;
+
+  private final ClassValue<Boolean> shared = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      return isShared(type);
+    }
+  };
+
+  /**
+   * @param sharedTypes Additional types whose instances, including those of subtypes, should be
+   *          shared rather than copied.
+   */
+  public DeepCloner(Class<?>... sharedTypes) {
+    this.sharedTypes = sharedTypes.clone();
+  }
+
+  /**
+   * @return Whether instances of {@code type} are shared between the original and the copy: true
+   *         for boxed primitives, {@link String}, {@link Class}, enums, {@link BigInteger},
+   *         {@link BigDecimal}, {@link UUID}, {@code java.time} types, records, hidden classes
+   *         such as those of lambdas and method references, types tied to the JVM such as
+   *         {@link Thread} and {@link Reference}, and the types given to the constructor. Records
+   *         and hidden classes are shared because their fields can't be copied one by one, so a
+   *         lambda, such as a {@link java.util.TreeMap}'s comparator, is copied by reference along
+   *         with whatever it captured. Called once per class and cached.
+   */
+  protected boolean isShared(Class<?> type) {
+    if (IMMUTABLE_CLASSES.contains(type) || Enum.class.isAssignableFrom(type)
+        || type.isRecord() || type.isHidden() || type.getName().startsWith("java.time.")) {
+      return true;
+    }
+    if (isJvmBound(type)) {
+      return true;
+    }
+    for (Class<?> sharedType : sharedTypes) {
+      if (sharedType.isAssignableFrom(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return Whether instances of {@code type} are tied to the JVM or to the garbage collector. */
+  static boolean isJvmBound(Class<?> type) {
+    for (Class<?> jvmBoundType : JVM_BOUND_TYPES) {
+      if (jvmBoundType.isAssignableFrom(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return A deep copy of {@code root}, made on the calling thread. */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public <T> T deepClone(@Nullable T root) {
+    SequentialTraversal traversal = new SequentialTraversal();
+    T copy = (T) traversal.copyOf(root);
+    traversal.run();
+    return copy;
+  }
+
+  /**
+   * @return A deep copy of {@code root}. Parts of the graph are copied in parallel on
+   *         {@code pool} once the worklist grows past {@link #SPLIT_THRESHOLD}. Objects that other
+   *         threads change during the copy may be copied in an inconsistent state.
+   */
+  @SuppressWarnings("unchecked")
+  @Nullable
+  public <T> T deepClone(@Nullable T root, ForkJoinPool pool) {
+    IdentityTable[] stripes = new IdentityTable[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new IdentityTable(16);
+    }
+    CopyTask task = new CopyTask(stripes, new ArrayDeque<>());
+    T copy = (T) task.copyOf(root);
+    pool.invoke(task);
+    return copy;
+  }
+
+  /**
+   * Where copies are recorded and which objects still need their fields copied. Each pending object
+   * is followed in {@link #work} by its copy.
+   */
+  private abstract class Traversal {
+    final ArrayDeque<Object> work;
+
+    Traversal(ArrayDeque<Object> work) {
+      this.work = work;
+    }
+
+    /** @return The copy of {@code original}, allocating and registering it if it's new. */
+    abstract Object lookUpOrAllocate(Object original);
+
+    @Nullable
+    final Object copyOf(@Nullable Object original) {
+      if (original == null || shared.get(original.getClass())) {
+        return original;
+      }
+      return lookUpOrAllocate(original);
+    }
+
+    /**
+     * @return A new copy of {@code original}, which is complete for a primitive array and otherwise
+     *         still needs its fields or elements filled in by {@link #fill}.
+     */
+    final Object allocate(Object original) {
+      Class<?> type = original.getClass();
+      if (type.isArray()) {
+        int length = Array.getLength(original);
+        Object copy = Array.newInstance(type.getComponentType(), length);
+        if (type.getComponentType().isPrimitive()) {
+          System.arraycopy(original, 0, copy, 0, length);
+        }
+        return copy;
+      }
+      try {
+        return SunMiscUnsafeBuilder.UNSAFE.allocateInstance(type);
+      } catch (InstantiationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Queues a new copy to have its fields filled in, unless it's already complete. */
+    final void enqueue(Object original, Object copy) {
+      Class<?> type = original.getClass();
+      if (!type.isArray() || !type.getComponentType().isPrimitive()) {
+        work.addFirst(copy);
+        work.addFirst(original);
+      }
+    }
+
+    final void fill(Object original, Object copy) {
+      if (original instanceof Object[]) {
+        Object[] elements = (Object[]) original;
+        Object[] copiedElements = (Object[]) copy;
+        for (int i = 0; i < elements.length; i++) {
+          copiedElements[i] = copyOf(elements[i]);
+        }
+        return;
+      }
+      InstanceCopier copier = InstanceCopier.of(original.getClass());
+      copier.copyPrimitives(original, copy);
+      for (long offset : copier.referenceOffsets) {
+        Object value = SunMiscUnsafeBuilder.UNSAFE.getObject(original, offset);
+        SunMiscUnsafeBuilder.UNSAFE.putObject(copy, offset, copyOf(value));
+      }
+    }
+  }
+
+  private final class SequentialTraversal extends Traversal {
+    private final IdentityTable copies = new IdentityTable(64);
+
+    SequentialTraversal() {
+      super(new ArrayDeque<>());
+    }
+
+    @Override
+    Object lookUpOrAllocate(Object original) {
+      int hash = System.identityHashCode(original);
+      Object copy = copies.get(original, hash);
+      if (copy == null) {
+        copy = allocate(original);
+        copies.put(original, hash, copy);
+        enqueue(original, copy);
+      }
+      return copy;
+    }
+
+    void run() {
+      while (!work.isEmpty()) {
+        fill(work.pollFirst(), work.pollFirst());
+      }
+    }
+  }
+
+  /**
+   * A part of a parallel copy. Shares the identity map, split into independently locked stripes,
+   * with every other task, and splits its worklist with a new task whenever it grows too long.
+   */
+  private final class CopyTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final IdentityTable[] stripes;
+    private final Traversal traversal;
+
+    CopyTask(IdentityTable[] stripes, ArrayDeque<Object> work) {
+      this.stripes = stripes;
+      traversal = new Traversal(work) {
+        @Override
+        Object lookUpOrAllocate(Object original) {
+          int hash = System.identityHashCode(original);
+          IdentityTable stripe = stripes[hash & (STRIPES - 1)];
+          Object copy;
+          synchronized (stripe) {
+            copy = stripe.get(original, hash);
+            if (copy != null) {
+              return copy;
+            }
+            copy = allocate(original);
+            stripe.put(original, hash, copy);
+          }
+          enqueue(original, copy);
+          return copy;
+        }
+      };
+    }
+
+    Object copyOf(@Nullable Object original) {
+      return traversal.copyOf(original);
+    }
+
+    @Override
+    protected void compute() {
+      ArrayDeque<Object> work = traversal.work;
+      ArrayList<CopyTask> forked = new ArrayList<>();
+      while (!work.isEmpty()) {
+        if (work.size() >= 2 * SPLIT_THRESHOLD) {
+          ArrayDeque<Object> split = new ArrayDeque<>();
+          for (int i = work.size() / 4; i > 0; i--) {
+            Object copy = work.pollLast();
+            split.addFirst(copy);
+            split.addFirst(work.pollLast());
+          }
+          CopyTask task = new CopyTask(stripes, split);
+          task.fork();
+          forked.add(task);
+        }
+        traversal.fill(work.pollFirst(), work.pollFirst());
+      }
+      for (CopyTask task : forked) {
+        task.join();
+      }
+    }
+  }
+}
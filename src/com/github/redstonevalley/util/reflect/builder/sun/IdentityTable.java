@@ -0,0 +1,68 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+/**
+ * A map from objects, compared by identity, to their copies. Unlike
+ * {@link java.util.IdentityHashMap}, this keeps each key's {@link System#identityHashCode} in an
+ * {@code int[]} beside it, so a probe compares hashes before references and a rehash never needs to
+ * recompute them. Not thread-safe.
+ *
+ * @author cryoc
+ */
+final class IdentityTable {
+  private int[] hashes;
+  private Object[] keys;
+  private Object[] values;
+  private int size;
+
+  /** @param capacity A power of 2. */
+  IdentityTable(int capacity) {
+    hashes = new int[capacity];
+    keys = new Object[capacity];
+    values = new Object[capacity];
+  }
+
+  /** @return The value for {@code key}, whose identity hash is {@code hash}, or null if none. */
+  Object get(Object key, int hash) {
+    int mask = keys.length - 1;
+    for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+      if (hashes[i] == hash && keys[i] == key) {
+        return values[i];
+      }
+    }
+    return null;
+  }
+
+  /** Adds {@code key}, which must not already be present. */
+  void put(Object key, int hash, Object value) {
+    if (2 * (size + 1) > keys.length) {
+      resize();
+    }
+    insert(key, hash, value);
+    size++;
+  }
+
+  private void insert(Object key, int hash, Object value) {
+    int mask = keys.length - 1;
+    int i = hash & mask;
+    while (keys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    hashes[i] = hash;
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  private void resize() {
+    int[] oldHashes = hashes;
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    hashes = new int[oldKeys.length * 2];
+    keys = new Object[oldKeys.length * 2];
+    values = new Object[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        insert(oldKeys[i], oldHashes[i], oldValues[i]);
+      }
+    }
+  }
+}
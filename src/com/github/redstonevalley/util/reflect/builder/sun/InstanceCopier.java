@@ -0,0 +1,106 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+
+/**
+ * How to copy an instance of one class: primitives by aligned {@code long} and {@code int} words,
+ * and references one by one. Computed once per class.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+final class InstanceCopier {
+
+  private static final ClassValue<InstanceCopier> COPIERS = new ClassValue<InstanceCopier>() {
+    @Override
+    protected InstanceCopier computeValue(Class<?> type) {
+      return new InstanceCopier(UnsafeLayout.of(type));
+    }
+  };
+
+  final long[] longWords;
+  final long[] intWords;
+  final long[] referenceOffsets;
+
+  /** The declared type of the field at each of {@link #referenceOffsets}. */
+  final Class<?>[] referenceTypes;
+
+  /**
+   * A hash of the name, type and offset of every field, which differs, with high probability,
+   * between JVMs that lay out the class differently.
+   */
+  final int fingerprint;
+
+  private InstanceCopier(UnsafeLayout layout) {
+    TreeSet<Long> ints = new TreeSet<>();
+    TreeSet<Long> longs = new TreeSet<>();
+    ArrayList<Long> references = new ArrayList<>();
+    ArrayList<Class<?>> types = new ArrayList<>();
+    int hash = 1;
+    for (int slot = 0; slot < layout.plan.size(); slot++) {
+      Field field = layout.plan.getField(slot);
+      hash = 31 * hash + field.getDeclaringClass().getName().hashCode();
+      hash = 31 * hash + field.getName().hashCode();
+      hash = 31 * hash + field.getType().getName().hashCode();
+      hash = 31 * hash + Long.hashCode(layout.offsets[slot]);
+    }
+    fingerprint = hash;
+    for (int step : layout.copyProgram) {
+      if (step < 0) {
+        continue;
+      }
+      long offset = layout.offsets[step];
+      switch (layout.plan.getKind(step)) {
+        case ClassPlan.KIND_OBJECT:
+          references.add(offset);
+          types.add(layout.plan.getField(step).getType());
+          break;
+        case ClassPlan.KIND_LONG:
+        case ClassPlan.KIND_DOUBLE:
+          longs.add(offset);
+          break;
+        default:
+          // Narrower fields never share an aligned int word with a reference or the header.
+          ints.add(offset & ~3L);
+      }
+    }
+    intWords = toLongArray(ints);
+    long[] leftoverLongs = toLongArray(longs);
+    longWords = Arrays.copyOf(layout.copyWordOffsets,
+        layout.copyWordOffsets.length + leftoverLongs.length);
+    System.arraycopy(leftoverLongs, 0, longWords, layout.copyWordOffsets.length,
+        leftoverLongs.length);
+    referenceOffsets = toLongArray(references);
+    referenceTypes = types.toArray(new Class<?>[0]);
+  }
+
+  static InstanceCopier of(Class<?> type) {
+    return COPIERS.get(type);
+  }
+
+  private static long[] toLongArray(Collection<Long> offsets) {
+    long[] array = new long[offsets.size()];
+    int i = 0;
+    for (long offset : offsets) {
+      array[i++] = offset;
+    }
+    return array;
+  }
+
+  void copyPrimitives(Object original, Object copy) {
+    for (long offset : longWords) {
+      SunMiscUnsafeBuilder.UNSAFE.putLong(
+          copy, offset, SunMiscUnsafeBuilder.UNSAFE.getLong(original, offset));
+    }
+    for (long offset : intWords) {
+      SunMiscUnsafeBuilder.UNSAFE.putInt(
+          copy, offset, SunMiscUnsafeBuilder.UNSAFE.getInt(original, offset));
+    }
+  }
+}
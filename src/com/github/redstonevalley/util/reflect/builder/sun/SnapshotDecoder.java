@@ -0,0 +1,297 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Rebuilds a graph of objects from a snapshot written by {@link SnapshotEncoder}. Instances are
+ * allocated without running a constructor, as by {@link SunMiscUnsafeBuilder}, and their primitive
+ * fields are copied straight from the buffer into memory a word at a time.
+ *
+ * <p>Before any instance of a class is built, the decoder checks that the class's field layout in
+ * this JVM matches the one it was written with, and every reference is checked against the type of
+ * the field or array that holds it. Even so, a snapshot can set any field of any class that it
+ * names to any value of the right type, so it should only be read from a trusted source.
+ *
+ * <p>A decoder is reusable but not thread-safe.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+public class SnapshotDecoder {
+
+  private static final Map<String, Class<?>> PRIMITIVE_CLASSES = new HashMap<>();
+
+  static {
+    for (Class<?> type : new Class<?>[] {boolean.class, byte.class, short.class, char.class,
+        int.class, long.class, float.class, double.class, void.class}) {
+      PRIMITIVE_CLASSES.put(type.getName(), type);
+    }
+  }
+
+  private final ClassLoader loader;
+  private final ArrayList<Object> objects = new ArrayList<>();
+  private final ArrayList<Class<?>> classes = new ArrayList<>();
+  private final ArrayDeque<Object> pending = new ArrayDeque<>();
+  private ByteBuffer in;
+
+  /** @param loader The class loader that resolves the names of classes in a snapshot. */
+  public SnapshotDecoder(ClassLoader loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * Reads a snapshot from {@code buffer}'s position, and advances the position past it. The
+   * buffer's byte order is unchanged.
+   *
+   * @return The root of the rebuilt graph.
+   * @throws IllegalArgumentException if the snapshot is malformed, names a class that can't be
+   *           loaded or built, or was written with a different layout of a class.
+   */
+  @Nullable
+  public Object decode(ByteBuffer buffer) {
+    ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.nativeOrder());
+    in = buffer;
+    try {
+      if (in.getInt() != SnapshotEncoder.MAGIC) {
+        throw new IllegalArgumentException("Not a snapshot");
+      }
+      Object root = readReference();
+      while (!pending.isEmpty()) {
+        readBody(pending.poll());
+      }
+      return root;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated snapshot", e);
+    } finally {
+      buffer.order(order);
+      objects.clear();
+      classes.clear();
+      pending.clear();
+      in = null;
+    }
+  }
+
+  /** Reads a reference written by {@link SnapshotEncoder}, and creates the object if it's new. */
+  @Nullable
+  private Object readReference() {
+    int handle = in.getInt();
+    if (handle == SnapshotEncoder.NULL) {
+      return null;
+    }
+    if (handle >= 0 && handle < objects.size()) {
+      return objects.get(handle);
+    }
+    if (handle != objects.size()) {
+      throw new IllegalArgumentException("Bad handle " + handle);
+    }
+    Object value;
+    byte tag = in.get();
+    switch (tag) {
+      case SnapshotEncoder.TAG_STRING:
+        value = readString();
+        break;
+      case SnapshotEncoder.TAG_ENUM:
+        value = readEnum();
+        break;
+      case SnapshotEncoder.TAG_CLASS:
+        value = resolve(readString());
+        break;
+      case SnapshotEncoder.TAG_PRIMITIVE_ARRAY:
+        value = readPrimitiveArray(readClass());
+        break;
+      case SnapshotEncoder.TAG_OBJECT_ARRAY:
+        value = newObjectArray(readClass());
+        pending.add(value);
+        break;
+      case SnapshotEncoder.TAG_INSTANCE:
+        value = allocate(readClass());
+        pending.add(value);
+        break;
+      default:
+        throw new IllegalArgumentException("Bad tag " + tag);
+    }
+    objects.add(value);
+    return value;
+  }
+
+  /**
+   * Reads a class id, followed the first time by its name and, for the class of an instance, the
+   * fingerprint of the layout that it was written with.
+   */
+  private Class<?> readClass() {
+    int id = in.getInt();
+    if (id >= 0 && id < classes.size()) {
+      return classes.get(id);
+    }
+    if (id != classes.size()) {
+      throw new IllegalArgumentException("Bad class id " + id);
+    }
+    Class<?> type = resolve(readString());
+    if (!type.isArray() && !type.isEnum()) {
+      checkInstantiable(type);
+      if (in.getInt() != InstanceCopier.of(type).fingerprint) {
+        throw new IllegalArgumentException(type.getName() + " was written with a different layout");
+      }
+    }
+    classes.add(type);
+    return type;
+  }
+
+  private Class<?> resolve(String name) {
+    Class<?> primitive = PRIMITIVE_CLASSES.get(name);
+    if (primitive != null) {
+      return primitive;
+    }
+    try {
+      return Class.forName(name, false, loader);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private static void checkInstantiable(Class<?> type) {
+    if (type.isPrimitive() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+        || type == String.class || type == Class.class || DeepCloner.isJvmBound(type)
+        || type.isHidden() || type.isRecord()) {
+      throw new IllegalArgumentException("Can't build an instance of " + type.getName());
+    }
+  }
+
+  private Object allocate(Class<?> type) {
+    if (type.isArray() || type.isEnum()) {
+      throw new IllegalArgumentException("Can't build an instance of " + type.getName());
+    }
+    try {
+      return SunMiscUnsafeBuilder.UNSAFE.allocateInstance(type);
+    } catch (InstantiationException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
+  private String readString() {
+    char[] chars = new char[readLength(2)];
+    in.asCharBuffer().get(chars);
+    in.position(in.position() + chars.length * 2);
+    return new String(chars);
+  }
+
+  private Enum<?> readEnum() {
+    Class<?> type = readClass();
+    Object[] constants = type.getEnumConstants();
+    int ordinal = in.getInt();
+    if (constants == null || ordinal < 0 || ordinal >= constants.length) {
+      throw new IllegalArgumentException(String.format("No constant %d of %s", ordinal, type));
+    }
+    return (Enum<?>) constants[ordinal];
+  }
+
+  /**
+   * @return A length read from the buffer, checked against the bytes that remain.
+   * @param width The number of bytes that each element occupies in the buffer.
+   */
+  private int readLength(int width) {
+    int length = in.getInt();
+    if (length < 0 || (long) length * width > in.remaining()) {
+      throw new IllegalArgumentException("Bad length " + length);
+    }
+    return length;
+  }
+
+  private Object[] newObjectArray(Class<?> type) {
+    if (!type.isArray() || type.getComponentType().isPrimitive()) {
+      throw new IllegalArgumentException(type + " isn't an object array class");
+    }
+    // Each element takes at least the 4 bytes of its handle.
+    return (Object[]) Array.newInstance(type.getComponentType(), readLength(4));
+  }
+
+  private Object readPrimitiveArray(Class<?> type) {
+    Class<?> component = type.getComponentType();
+    if (component == null || !component.isPrimitive()) {
+      throw new IllegalArgumentException(type + " isn't a primitive array class");
+    }
+    int width = width(component);
+    int length = readLength(width);
+    Object array = Array.newInstance(component, length);
+    if (component == boolean.class) {
+      boolean[] booleans = (boolean[]) array;
+      for (int i = 0; i < length; i++) {
+        booleans[i] = in.get() != 0;
+      }
+      return array;
+    }
+    if (component == byte.class) {
+      in.get((byte[]) array);
+      return array;
+    }
+    if (component == short.class) {
+      in.asShortBuffer().get((short[]) array);
+    } else if (component == char.class) {
+      in.asCharBuffer().get((char[]) array);
+    } else if (component == int.class) {
+      in.asIntBuffer().get((int[]) array);
+    } else if (component == long.class) {
+      in.asLongBuffer().get((long[]) array);
+    } else if (component == float.class) {
+      in.asFloatBuffer().get((float[]) array);
+    } else {
+      in.asDoubleBuffer().get((double[]) array);
+    }
+    in.position(in.position() + length * width);
+    return array;
+  }
+
+  /** @return The number of bytes that an element of a primitive array occupies in a snapshot. */
+  static int width(Class<?> component) {
+    if (component == boolean.class || component == byte.class) {
+      return 1;
+    } else if (component == short.class || component == char.class) {
+      return 2;
+    } else if (component == int.class || component == float.class) {
+      return 4;
+    }
+    return 8;
+  }
+
+  private void readBody(Object value) {
+    if (value instanceof Object[]) {
+      Object[] array = (Object[]) value;
+      Class<?> component = array.getClass().getComponentType();
+      for (int i = 0; i < array.length; i++) {
+        array[i] = checkType(readReference(), component);
+      }
+      return;
+    }
+    InstanceCopier copier = InstanceCopier.of(value.getClass());
+    for (long offset : copier.longWords) {
+      SunMiscUnsafeBuilder.UNSAFE.putLong(value, offset, in.getLong());
+    }
+    for (long offset : copier.intWords) {
+      SunMiscUnsafeBuilder.UNSAFE.putInt(value, offset, in.getInt());
+    }
+    for (int i = 0; i < copier.referenceOffsets.length; i++) {
+      SunMiscUnsafeBuilder.UNSAFE.putObject(value, copier.referenceOffsets[i],
+          checkType(readReference(), copier.referenceTypes[i]));
+    }
+  }
+
+  @Nullable
+  private static Object checkType(@Nullable Object value, Class<?> type) {
+    if (value != null && !type.isInstance(value)) {
+      throw new IllegalArgumentException(
+          String.format("A %s can't be stored as a %s", value.getClass().getName(), type));
+    }
+    return value;
+  }
+}
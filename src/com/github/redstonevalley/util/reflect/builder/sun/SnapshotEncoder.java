@@ -0,0 +1,237 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes a graph of objects to a {@link ByteBuffer} as a snapshot that {@link SnapshotDecoder} can
+ * rebuild. Primitive fields are copied straight from each object's memory, a word at a time, in the
+ * order given by its {@link InstanceCopier}, and the graph is traversed breadth first with no
+ * recursion, so cycles and shared objects are written once and deep graphs don't overflow the
+ * stack.
+ *
+ * <p>This isn't a replacement for {@link java.io.Serializable}: every field is written, including
+ * transient ones, no {@code writeObject} or {@code writeReplace} hooks run, and the encoding is in
+ * native byte order and relies on the JVM's field layout. A snapshot can only be decoded by the
+ * same JVM build with the same classes; {@link SnapshotDecoder} checks each class's layout against
+ * the one it was written with. {@link String}s, enum constants and {@link Class}es are written by
+ * value. Instances of types tied to the JVM, such as {@link Thread}, and of records, whose fields
+ * {@code Unsafe} can't locate, can't be written at all. Identity hash codes aren't kept, so a hash
+ * table keyed by objects that don't override {@link Object#hashCode()}, such as enum constants, has
+ * to be rebuilt after it's decoded.
+ *
+ * <p>An encoder is reusable but not thread-safe.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+public class SnapshotEncoder {
+
+  static final int MAGIC = 0x52425331;
+  static final int NULL = -1;
+
+  static final byte TAG_INSTANCE = 0;
+  static final byte TAG_OBJECT_ARRAY = 1;
+  static final byte TAG_PRIMITIVE_ARRAY = 2;
+  static final byte TAG_STRING = 3;
+  static final byte TAG_ENUM = 4;
+  static final byte TAG_CLASS = 5;
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  private IdentityTable handles;
+  private int nextHandle;
+  private final HashMap<Class<?>, Integer> classIds = new HashMap<>();
+  private final ArrayDeque<Object> pending = new ArrayDeque<>();
+  private ByteBuffer out;
+
+  /**
+   * Writes a snapshot of {@code root} and everything reachable from it at {@code buffer}'s
+   * position, and advances the position past it. The buffer's byte order is unchanged.
+   *
+   * @throws BufferOverflowException if the snapshot doesn't fit. The buffer's position is then
+   *           undefined.
+   * @throws IllegalArgumentException if the graph holds an instance that can't be written.
+   */
+  public void encode(@Nullable Object root, ByteBuffer buffer) {
+    ByteOrder order = buffer.order();
+    buffer.order(ByteOrder.nativeOrder());
+    handles = new IdentityTable(64);
+    nextHandle = 0;
+    out = buffer;
+    try {
+      out.putInt(MAGIC);
+      writeReference(root);
+      while (!pending.isEmpty()) {
+        writeBody(pending.poll());
+      }
+    } finally {
+      buffer.order(order);
+      handles = null;
+      classIds.clear();
+      pending.clear();
+      out = null;
+    }
+  }
+
+  /**
+   * @return A new heap buffer holding a snapshot of {@code root}, from position 0 to its limit.
+   * @throws IllegalArgumentException if the graph holds an instance that can't be written.
+   */
+  public ByteBuffer encode(@Nullable Object root) {
+    for (int capacity = INITIAL_CAPACITY;; capacity *= 2) {
+      ByteBuffer buffer = ByteBuffer.allocate(capacity);
+      try {
+        encode(root, buffer);
+      } catch (BufferOverflowException e) {
+        if (capacity > Integer.MAX_VALUE / 2) {
+          throw e;
+        }
+        continue;
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  /**
+   * Writes a reference as a handle: {@link #NULL}, the handle of an object written earlier, or the
+   * next handle followed by a description of a new object. The fields and elements of instances and
+   * object arrays are written later, in handle order.
+   */
+  private void writeReference(@Nullable Object value) {
+    if (value == null) {
+      out.putInt(NULL);
+      return;
+    }
+    int hash = System.identityHashCode(value);
+    Integer handle = (Integer) handles.get(value, hash);
+    if (handle != null) {
+      out.putInt(handle);
+      return;
+    }
+    handles.put(value, hash, nextHandle);
+    out.putInt(nextHandle++);
+    Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.put(TAG_STRING);
+      writeString((String) value);
+    } else if (value instanceof Enum) {
+      out.put(TAG_ENUM);
+      Enum<?> constant = (Enum<?>) value;
+      writeClass(constant.getDeclaringClass(), false);
+      out.putInt(constant.ordinal());
+    } else if (type == Class.class) {
+      out.put(TAG_CLASS);
+      writeString(((Class<?>) value).getName());
+    } else if (type.isArray()) {
+      boolean primitive = type.getComponentType().isPrimitive();
+      out.put(primitive ? TAG_PRIMITIVE_ARRAY : TAG_OBJECT_ARRAY);
+      writeClass(type, false);
+      if (primitive) {
+        writePrimitiveArray(value);
+      } else {
+        out.putInt(((Object[]) value).length);
+        pending.add(value);
+      }
+    } else {
+      if (DeepCloner.isJvmBound(type) || type.isHidden() || type.isRecord()) {
+        throw new IllegalArgumentException("Can't write an instance of " + type.getName());
+      }
+      out.put(TAG_INSTANCE);
+      writeClass(type, true);
+      pending.add(value);
+    }
+  }
+
+  /**
+   * Writes a class as an id, followed the first time by its name and, for the class of an instance,
+   * its layout's fingerprint.
+   */
+  private void writeClass(Class<?> type, boolean instance) {
+    Integer id = classIds.get(type);
+    if (id != null) {
+      out.putInt(id);
+      return;
+    }
+    id = classIds.size();
+    classIds.put(type, id);
+    out.putInt(id);
+    writeString(type.getName());
+    if (instance) {
+      out.putInt(InstanceCopier.of(type).fingerprint);
+    }
+  }
+
+  private void writeString(String value) {
+    out.putInt(value.length());
+    ensureRemaining(value.length() * 2L);
+    out.asCharBuffer().put(value);
+    out.position(out.position() + value.length() * 2);
+  }
+
+  private void writeBody(Object value) {
+    if (value instanceof Object[]) {
+      for (Object element : (Object[]) value) {
+        writeReference(element);
+      }
+      return;
+    }
+    InstanceCopier copier = InstanceCopier.of(value.getClass());
+    for (long offset : copier.longWords) {
+      out.putLong(SunMiscUnsafeBuilder.UNSAFE.getLong(value, offset));
+    }
+    for (long offset : copier.intWords) {
+      out.putInt(SunMiscUnsafeBuilder.UNSAFE.getInt(value, offset));
+    }
+    for (long offset : copier.referenceOffsets) {
+      writeReference(SunMiscUnsafeBuilder.UNSAFE.getObject(value, offset));
+    }
+  }
+
+  /** Writes the length and elements of a primitive array, through a view buffer if there is one. */
+  private void writePrimitiveArray(Object array) {
+    int length = Array.getLength(array);
+    out.putInt(length);
+    Class<?> component = array.getClass().getComponentType();
+    if (component == boolean.class) {
+      ensureRemaining(length);
+      for (boolean element : (boolean[]) array) {
+        out.put(element ? (byte) 1 : (byte) 0);
+      }
+      return;
+    }
+    if (component == byte.class) {
+      out.put((byte[]) array);
+      return;
+    }
+    int width = SnapshotDecoder.width(component);
+    ensureRemaining((long) length * width);
+    if (component == short.class) {
+      out.asShortBuffer().put((short[]) array);
+    } else if (component == char.class) {
+      out.asCharBuffer().put((char[]) array);
+    } else if (component == int.class) {
+      out.asIntBuffer().put((int[]) array);
+    } else if (component == long.class) {
+      out.asLongBuffer().put((long[]) array);
+    } else if (component == float.class) {
+      out.asFloatBuffer().put((float[]) array);
+    } else {
+      out.asDoubleBuffer().put((double[]) array);
+    }
+    out.position(out.position() + length * width);
+  }
+
+  private void ensureRemaining(long bytes) {
+    if (out.remaining() < bytes) {
+      throw new BufferOverflowException();
+    }
+  }
+}
@@ -2,7 +2,10 @@ package com.github.redstonevalley.util.reflect.builder.sun;
 
 import java.lang.reflect.Field;
 
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
 import com.github.redstonevalley.util.reflect.builder.ReflectiveBuilder;
+import com.github.redstonevalley.util.reflect.builder.SlotValues;
 
 import sun.misc.Unsafe;
 
@@ -19,43 +22,80 @@ import sun.misc.Unsafe;
 public abstract class SunMiscUnsafeBuilder<T> extends ReflectiveBuilder<T> {
 
   @Override
-  protected Object getField(Object sourceObject, Field field) {
-    synchronized (sourceObject) {
-      Class<?> fieldType = field.getType();
-      long fieldOffset = UNSAFE.objectFieldOffset(field);
-      if (fieldType.equals(boolean.class)) {
+  protected Object readField(Object sourceObject, Field field) {
+    UnsafeLayout layout = UnsafeLayout.ofDeclaringClass(field);
+    int slot = layout.slotOf(field);
+    long fieldOffset = layout.offsets[slot];
+    switch (layout.plan.getKind(slot)) {
+      case ClassPlan.KIND_BOOLEAN:
         return getBoolean(sourceObject, fieldOffset);
-      } else if (fieldType.equals(byte.class)) {
+      case ClassPlan.KIND_BYTE:
         return getByte(sourceObject, fieldOffset);
-      } else if (fieldType.equals(short.class)) {
+      case ClassPlan.KIND_SHORT:
         return getShort(sourceObject, fieldOffset);
-      } else if (fieldType.equals(char.class)) {
+      case ClassPlan.KIND_CHAR:
         return getChar(sourceObject, fieldOffset);
-      } else if (fieldType.equals(int.class)) {
+      case ClassPlan.KIND_INT:
         return UNSAFE.getInt(sourceObject, fieldOffset);
-      } else if (fieldType.equals(long.class)) {
+      case ClassPlan.KIND_LONG:
         return UNSAFE.getLong(sourceObject, fieldOffset);
-      } else if (fieldType.equals(float.class)) {
+      case ClassPlan.KIND_FLOAT:
         return getFloat(sourceObject, fieldOffset);
-      } else if (fieldType.equals(double.class)) {
+      case ClassPlan.KIND_DOUBLE:
         return getDouble(sourceObject, fieldOffset);
-      } else {
+      default:
         return UNSAFE.getObject(sourceObject, fieldOffset);
-      }
     }
   }
 
-  protected abstract Object getDouble(Object sourceObject, long fieldOffset);
+  @Override
+  protected long readFieldBits(Object sourceObject, Field field, int kind) {
+    UnsafeLayout layout = UnsafeLayout.ofDeclaringClass(field);
+    long fieldOffset = layout.offsets[layout.slotOf(field)];
+    return readPrimitive(sourceObject, fieldOffset, kind);
+  }
 
-  protected abstract Object getFloat(Object sourceObject, long fieldOffset);
+  /** @return The primitive at {@code fieldOffset}, encoded as by {@link #toBits(int, Object)}. */
+  private long readPrimitive(Object sourceObject, long fieldOffset, int kind) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        return getBoolean(sourceObject, fieldOffset) ? 1 : 0;
+      case ClassPlan.KIND_BYTE:
+        return getByte(sourceObject, fieldOffset);
+      case ClassPlan.KIND_SHORT:
+        return getShort(sourceObject, fieldOffset);
+      case ClassPlan.KIND_CHAR:
+        return getChar(sourceObject, fieldOffset);
+      case ClassPlan.KIND_INT:
+        return UNSAFE.getInt(sourceObject, fieldOffset);
+      case ClassPlan.KIND_LONG:
+        return UNSAFE.getLong(sourceObject, fieldOffset);
+      case ClassPlan.KIND_FLOAT:
+        return Float.floatToRawIntBits(getFloat(sourceObject, fieldOffset));
+      case ClassPlan.KIND_DOUBLE:
+        return Double.doubleToRawLongBits(getDouble(sourceObject, fieldOffset));
+      default:
+        throw new IllegalArgumentException("Not a primitive kind: " + kind);
+    }
+  }
+
+  /** Wraps {@link sun.misc.Unsafe#getDouble} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract double getDouble(Object sourceObject, long fieldOffset);
+
+  /** Wraps {@link sun.misc.Unsafe#getFloat} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract float getFloat(Object sourceObject, long fieldOffset);
 
-  protected abstract Object getChar(Object sourceObject, long fieldOffset);
+  /** Wraps {@link sun.misc.Unsafe#getChar} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract char getChar(Object sourceObject, long fieldOffset);
 
-  protected abstract Object getShort(Object sourceObject, long fieldOffset);
+  /** Wraps {@link sun.misc.Unsafe#getShort} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract short getShort(Object sourceObject, long fieldOffset);
 
-  protected abstract Object getByte(Object sourceObject, long fieldOffset);
+  /** Wraps {@link sun.misc.Unsafe#getByte} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract byte getByte(Object sourceObject, long fieldOffset);
 
-  protected abstract Object getBoolean(Object sourceObject, long fieldOffset);
+  /** Wraps {@link sun.misc.Unsafe#getBoolean} if it's present on this JVM; reimplements it otherwise. */
+  protected abstract boolean getBoolean(Object sourceObject, long fieldOffset);
 
   protected static final Unsafe UNSAFE;
 
@@ -72,32 +112,215 @@ public abstract class SunMiscUnsafeBuilder<T> extends ReflectiveBuilder<T> {
 
   }
 
+  private final UnsafeLayout layout;
+
   public SunMiscUnsafeBuilder(Class<T> clazz) {
-    super(clazz, true);
+    this(clazz, ConcurrencyPolicy.MONITOR);
+  }
+
+  public SunMiscUnsafeBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    this(clazz, true, concurrencyPolicy);
+  }
+
+  /**
+   * @param allowsTypePunning Whether fields of classes other than T and its superclasses can be
+   *          set, which only this kind of builder can do; false to reject them like other builders.
+   */
+  protected SunMiscUnsafeBuilder(Class<T> clazz, boolean allowsTypePunning,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, allowsTypePunning, concurrencyPolicy);
+    layout = UnsafeLayout.of(clazz);
   }
 
+  /**
+   * {@inheritDoc} Writes the slots in offset order, and packs primitive fields that share a word
+   * into one store. Since packing zeroes the rest of the word, this relies on {@code built} coming
+   * straight from {@link #allocateInstance()}, with every field still at its default value.
+   */
   @Override
-  protected void setFieldInInstance(T objectBeingBuilt, Field field, Object value) {
-    Class<?> fieldType = field.getType();
-    long fieldOffset = UNSAFE.objectFieldOffset(field);
-    if (fieldType.equals(boolean.class)) {
-      putBoolean(objectBeingBuilt, fieldOffset, (boolean) value);
-    } else if (fieldType.equals(byte.class)) {
-      putByte(objectBeingBuilt, fieldOffset, (byte) value);
-    } else if (fieldType.equals(short.class)) {
-      putShort(objectBeingBuilt, fieldOffset, (short) value);
-    } else if (fieldType.equals(char.class)) {
-      putChar(objectBeingBuilt, fieldOffset, (char) value);
-    } else if (fieldType.equals(int.class)) {
-      UNSAFE.putInt(objectBeingBuilt, fieldOffset, (int) value);
-    } else if (fieldType.equals(long.class)) {
-      UNSAFE.putLong(objectBeingBuilt, fieldOffset, (long) value);
-    } else if (fieldType.equals(float.class)) {
-      putFloat(objectBeingBuilt, fieldOffset, (float) value);
-    } else if (fieldType.equals(double.class)) {
-      putDouble(objectBeingBuilt, fieldOffset, (double) value);
+  protected void writeFields(T built, SlotValues configured) {
+    int[] program = layout.writeProgram;
+    long[] offsets = layout.offsets;
+    boolean[] isSet = configured.isSet;
+    long[] bits = configured.bits;
+    for (int step : program) {
+      if (step >= 0) {
+        if (isSet[step]) {
+          writeSlot(built, configured, step, offsets[step]);
+        }
+        continue;
+      }
+      int word = ~step;
+      long value = 0;
+      boolean anySet = false;
+      for (int i = layout.wordStarts[word]; i < layout.wordStarts[word + 1]; i++) {
+        int slot = layout.wordSlots[i];
+        if (isSet[slot]) {
+          value |= (bits[slot] & layout.masks[slot]) << layout.shifts[slot];
+          anySet = true;
+        }
+      }
+      if (anySet) {
+        UNSAFE.putLong(built, layout.wordOffsets[word], value);
+      }
+    }
+    writeOtherFields(built, configured);
+  }
+
+  /**
+   * Equivalent to {@code fastClone(source, true)}.
+   */
+  public T fastClone(T source) {
+    return fastClone(source, true);
+  }
+
+  /**
+   * Builds a copy of {@code source}, which must be an instance of exactly this builder's class, and
+   * then applies the fields configured in this builder on top, as {@link #build()} would. Unlike
+   * {@link #clone(Object)} followed by {@link #build()}, this doesn't change the builder, and copies
+   * the instance as a whole: words holding only primitive fields are copied with one
+   * {@code getLong}/{@code putLong} each, and the remaining fields one by one, in offset order.
+   *
+   * @param snapshot If true, the copy is made while holding {@code source}'s monitor, so that it's a
+   *          consistent snapshot with respect to code that synchronizes on {@code source}. If false,
+   *          no lock is taken, and concurrent changes to {@code source} may be partly visible.
+   * @throws IllegalArgumentException if {@code source}'s class isn't this builder's class.
+   */
+  public T fastClone(T source, boolean snapshot) {
+    if (source.getClass() != clazz) {
+      throw new IllegalArgumentException(
+          String.format("Can't fast-clone a %s as a %s", source.getClass(), clazz));
+    }
+    T copy;
+    try {
+      copy = allocateInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    }
+    if (snapshot) {
+      synchronized (source) {
+        copyInstance(source, copy);
+      }
     } else {
+      copyInstance(source, copy);
+    }
+    readConfigured(configured -> {
+      writeOverrides(copy, configured);
+      return null;
+    });
+    return copy;
+  }
+
+  /** Writes the configured fields over a copy, one by one, since it isn't zeroed. */
+  private void writeOverrides(T copy, SlotValues configured) {
+    long[] offsets = layout.offsets;
+    for (int slot = 0; slot < offsets.length; slot++) {
+      if (configured.isSet[slot]) {
+        writeSlot(copy, configured, slot, offsets[slot]);
+      }
+    }
+    writeOtherFields(copy, configured);
+  }
+
+  @Override
+  protected boolean allocatesWithoutConstructor() {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc} Follows the same program as {@link #fastClone(Object)}, so words holding only
+   * primitive fields are cleared with one {@code putLong} each.
+   */
+  @Override
+  protected void resetFields(T reuse) {
+    long[] offsets = layout.offsets;
+    for (int step : layout.copyProgram) {
+      if (step < 0) {
+        UNSAFE.putLong(reuse, layout.copyWordOffsets[~step], 0);
+        continue;
+      }
+      int kind = layout.plan.getKind(step);
+      if (kind == ClassPlan.KIND_OBJECT) {
+        UNSAFE.putObject(reuse, offsets[step], null);
+      } else {
+        putPrimitive(reuse, layout.plan.getField(step), offsets[step], kind, 0);
+      }
+    }
+  }
+
+  private void copyInstance(T source, T copy) {
+    long[] offsets = layout.offsets;
+    for (int step : layout.copyProgram) {
+      if (step < 0) {
+        long wordOffset = layout.copyWordOffsets[~step];
+        UNSAFE.putLong(copy, wordOffset, UNSAFE.getLong(source, wordOffset));
+        continue;
+      }
+      long fieldOffset = offsets[step];
+      int kind = layout.plan.getKind(step);
+      if (kind == ClassPlan.KIND_OBJECT) {
+        UNSAFE.putObject(copy, fieldOffset, UNSAFE.getObject(source, fieldOffset));
+      } else {
+        putPrimitive(copy, layout.plan.getField(step), fieldOffset, kind,
+            readPrimitive(source, fieldOffset, kind));
+      }
+    }
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, Object value) {
+    UnsafeLayout layout = UnsafeLayout.ofDeclaringClass(field);
+    int slot = layout.slotOf(field);
+    setFieldInInstance(
+        objectBeingBuilt, field, layout.offsets[slot], layout.plan.getKind(slot), value);
+  }
+
+  @Override
+  protected long getFieldOffset(Field field) {
+    UnsafeLayout layout = UnsafeLayout.ofDeclaringClass(field);
+    return layout.offsets[layout.slotOf(field)];
+  }
+
+  @Override
+  protected void setFieldInInstance(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      Object value) {
+    if (kind == ClassPlan.KIND_OBJECT) {
       UNSAFE.putObject(objectBeingBuilt, fieldOffset, value);
+    } else {
+      putPrimitive(objectBeingBuilt, field, fieldOffset, kind, toBits(kind, value));
+    }
+  }
+
+  @Override
+  protected void putPrimitive(T objectBeingBuilt, Field field, long fieldOffset, int kind,
+      long bits) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+        putBoolean(objectBeingBuilt, fieldOffset, bits != 0);
+        break;
+      case ClassPlan.KIND_BYTE:
+        putByte(objectBeingBuilt, fieldOffset, (byte) bits);
+        break;
+      case ClassPlan.KIND_SHORT:
+        putShort(objectBeingBuilt, fieldOffset, (short) bits);
+        break;
+      case ClassPlan.KIND_CHAR:
+        putChar(objectBeingBuilt, fieldOffset, (char) bits);
+        break;
+      case ClassPlan.KIND_INT:
+        UNSAFE.putInt(objectBeingBuilt, fieldOffset, (int) bits);
+        break;
+      case ClassPlan.KIND_LONG:
+        UNSAFE.putLong(objectBeingBuilt, fieldOffset, bits);
+        break;
+      case ClassPlan.KIND_FLOAT:
+        putFloat(objectBeingBuilt, fieldOffset, Float.intBitsToFloat((int) bits));
+        break;
+      case ClassPlan.KIND_DOUBLE:
+        putDouble(objectBeingBuilt, fieldOffset, Double.longBitsToDouble(bits));
+        break;
+      default:
+        throw new IllegalArgumentException("Not a primitive kind: " + kind);
     }
   }
 
@@ -0,0 +1,199 @@
+package com.github.redstonevalley.util.reflect.builder.sun;
+
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+
+/**
+ * The {@link sun.misc.Unsafe} field offsets for the slots of a {@link ClassPlan}, computed once per
+ * class and shared by all {@link SunMiscUnsafeBuilder}s.
+ *
+ * <p>Also holds a write program that visits the slots in offset order, so that fields are written
+ * sequentially in memory, and that packs primitive fields sharing an aligned 8-byte word into a
+ * single {@code putLong}. A word is only packed if it lies after the object header and holds no
+ * reference field, since the packed store also zeroes any padding or unset fields in the word.
+ *
+ * @author cryoc
+ */
+@SuppressWarnings("restriction")
+final class UnsafeLayout {
+
+  private static final ClassValue<UnsafeLayout> LAYOUTS = new ClassValue<UnsafeLayout>() {
+    @Override
+    protected UnsafeLayout computeValue(Class<?> type) {
+      return new UnsafeLayout(ClassPlan.of(type));
+    }
+  };
+
+  private static final int WORD_SIZE = 8;
+  private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+  final ClassPlan plan;
+  final long[] offsets;
+
+  /**
+   * Each entry is either a slot, to be written on its own, or the bitwise complement of an index
+   * into {@link #wordOffsets}, for a packed word. Sorted by offset.
+   */
+  final int[] writeProgram;
+
+  /** The offset of each packed word. */
+  final long[] wordOffsets;
+
+  /**
+   * The slots packed into word {@code i} are {@code wordSlots[wordStarts[i]]} up to but excluding
+   * {@code wordSlots[wordStarts[i + 1]]}.
+   */
+  final int[] wordStarts;
+  final int[] wordSlots;
+
+  /** For each slot packed into a word, the left shift that moves its bits into place. */
+  final int[] shifts;
+
+  /** For each primitive slot, the mask of its bits as encoded by {@link ClassPlan} kind. */
+  final long[] masks;
+
+  /**
+   * Like {@link #writeProgram}, but for copying a whole instance: each entry is either a slot, to be
+   * copied on its own, or the bitwise complement of an index into {@link #copyWordOffsets}, for a
+   * word that holds only primitive fields and padding and so can be copied with one
+   * {@code getLong} and {@code putLong}.
+   */
+  final int[] copyProgram;
+  final long[] copyWordOffsets;
+
+  private UnsafeLayout(ClassPlan plan) {
+    this.plan = plan;
+    int size = plan.size();
+    offsets = new long[size];
+    for (int slot = 0; slot < size; slot++) {
+      offsets[slot] = SunMiscUnsafeBuilder.UNSAFE.objectFieldOffset(plan.getField(slot));
+    }
+    Integer[] sorted = new Integer[size];
+    long headerEnd = Long.MAX_VALUE;
+    for (int slot = 0; slot < size; slot++) {
+      sorted[slot] = slot;
+      headerEnd = Math.min(headerEnd, offsets[slot]);
+    }
+    Arrays.sort(sorted, Comparator.comparingLong(slot -> offsets[slot]));
+    shifts = new int[size];
+    masks = new long[size];
+    ArrayList<Integer> program = new ArrayList<>();
+    ArrayList<Long> words = new ArrayList<>();
+    ArrayList<Integer> starts = new ArrayList<>();
+    ArrayList<Integer> packed = new ArrayList<>();
+    ArrayList<Integer> copies = new ArrayList<>();
+    ArrayList<Long> copyWords = new ArrayList<>();
+    int i = 0;
+    while (i < size) {
+      int slot = sorted[i];
+      long word = offsets[slot] & -WORD_SIZE;
+      int end = i;
+      boolean packable = word >= headerEnd;
+      while (end < size && (offsets[sorted[end]] & -WORD_SIZE) == word) {
+        int member = sorted[end];
+        int width = width(plan.getKind(member));
+        packable &= plan.getKind(member) != ClassPlan.KIND_OBJECT
+            && offsets[member] + width <= word + WORD_SIZE;
+        end++;
+      }
+      if (packable) {
+        copies.add(~copyWords.size());
+        copyWords.add(word);
+      } else {
+        for (int j = i; j < end; j++) {
+          copies.add(sorted[j]);
+        }
+      }
+      if (packable && end - i > 1) {
+        program.add(~words.size());
+        words.add(word);
+        starts.add(packed.size());
+        for (int j = i; j < end; j++) {
+          int member = sorted[j];
+          int width = width(plan.getKind(member));
+          int position = (int) (offsets[member] - word);
+          shifts[member] = 8 * (BIG_ENDIAN ? WORD_SIZE - width - position : position);
+          masks[member] = width == WORD_SIZE ? -1L : (1L << (8 * width)) - 1;
+          packed.add(member);
+        }
+      } else {
+        for (int j = i; j < end; j++) {
+          program.add(sorted[j]);
+        }
+      }
+      i = end;
+    }
+    starts.add(packed.size());
+    writeProgram = toIntArray(program);
+    wordStarts = toIntArray(starts);
+    wordSlots = toIntArray(packed);
+    wordOffsets = toLongArray(words);
+    copyProgram = toIntArray(copies);
+    copyWordOffsets = toLongArray(copyWords);
+  }
+
+  /** @return The size in bytes of a primitive of the given {@link ClassPlan} kind. */
+  private static int width(int kind) {
+    switch (kind) {
+      case ClassPlan.KIND_BOOLEAN:
+      case ClassPlan.KIND_BYTE:
+        return 1;
+      case ClassPlan.KIND_SHORT:
+      case ClassPlan.KIND_CHAR:
+        return 2;
+      case ClassPlan.KIND_INT:
+      case ClassPlan.KIND_FLOAT:
+        return 4;
+      case ClassPlan.KIND_LONG:
+      case ClassPlan.KIND_DOUBLE:
+        return 8;
+      default:
+        return SunMiscUnsafeBuilder.UNSAFE.arrayIndexScale(Object[].class);
+    }
+  }
+
+  private static int[] toIntArray(ArrayList<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private static long[] toLongArray(ArrayList<Long> list) {
+    long[] array = new long[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  static UnsafeLayout of(Class<?> clazz) {
+    return LAYOUTS.get(clazz);
+  }
+
+  /**
+   * @return The layout of the class that declares {@code field}, in which {@code field} has a slot.
+   * @throws IllegalArgumentException if {@code field} is static.
+   */
+  static UnsafeLayout ofDeclaringClass(Field field) {
+    return of(field.getDeclaringClass());
+  }
+
+  /**
+   * @return The slot of {@code field}, which must be declared by this layout's class.
+   * @throws IllegalArgumentException if {@code field} is static.
+   */
+  int slotOf(Field field) {
+    int slot = plan.slotOf(field);
+    if (slot < 0) {
+      throw new IllegalArgumentException("Can't get the offset of static field " + field);
+    }
+    return slot;
+  }
+}
@@ -1,5 +1,8 @@
 package com.github.redstonevalley.util.reflect.builder.sun.android;
 
+import java.nio.ByteOrder;
+
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
 import com.github.redstonevalley.util.reflect.builder.sun.SunMiscUnsafeBuilder;
 
 /**
@@ -9,10 +12,22 @@ import com.github.redstonevalley.util.reflect.builder.sun.SunMiscUnsafeBuilder;
 @SuppressWarnings("restriction")
 public class AndroidSunMiscUnsafeBuilder<T> extends SunMiscUnsafeBuilder<T> {
 
+  private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
   public AndroidSunMiscUnsafeBuilder(Class<T> clazz) {
     super(clazz);
   }
 
+  public AndroidSunMiscUnsafeBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, concurrencyPolicy);
+  }
+
+  /** @see SunMiscUnsafeBuilder#SunMiscUnsafeBuilder(Class, boolean, ConcurrencyPolicy) */
+  public AndroidSunMiscUnsafeBuilder(Class<T> clazz, boolean allowsTypePunning,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, allowsTypePunning, concurrencyPolicy);
+  }
+
   @Override
   protected void putDouble(T objectBeingBuilt, long fieldOffset, double value) {
     UNSAFE.putLong(objectBeingBuilt, fieldOffset, Double.doubleToRawLongBits(value));
@@ -25,64 +40,77 @@ public class AndroidSunMiscUnsafeBuilder<T> extends SunMiscUnsafeBuilder<T> {
 
   @Override
   protected void putChar(T objectBeingBuilt, long fieldOffset, char value) {
-    int oldValue = UNSAFE.getInt(objectBeingBuilt, fieldOffset - 2);
-    int newValue = (oldValue & 0xFFFF0000) | value;
-    UNSAFE.putInt(objectBeingBuilt, fieldOffset - 2, newValue);
+    putSubWord(objectBeingBuilt, fieldOffset, 2, value);
   }
 
   @Override
   protected void putShort(T objectBeingBuilt, long fieldOffset, short value) {
-    int oldValue = UNSAFE.getInt(objectBeingBuilt, fieldOffset - 2);
-    int newValue = (oldValue & 0xFFFF0000) | value;
-    UNSAFE.putInt(objectBeingBuilt, fieldOffset - 2, newValue);
+    putSubWord(objectBeingBuilt, fieldOffset, 2, value);
   }
 
   @Override
   protected void putByte(T objectBeingBuilt, long fieldOffset, byte value) {
-    int oldValue = UNSAFE.getInt(objectBeingBuilt, fieldOffset - 3);
-    int newValue = (oldValue & 0xFFFFFF00) | value;
-    UNSAFE.putInt(objectBeingBuilt, fieldOffset - 3, newValue);
+    putSubWord(objectBeingBuilt, fieldOffset, 1, value);
   }
 
   @Override
   protected void putBoolean(T objectBeingBuilt, long fieldOffset, boolean value) {
-    int oldValue = UNSAFE.getInt(objectBeingBuilt, fieldOffset - 3);
-    int newValue = (oldValue & 0xFFFFFF00) | (value ? 1 : 0);
-    UNSAFE.putInt(objectBeingBuilt, fieldOffset - 3, newValue);
+    putSubWord(objectBeingBuilt, fieldOffset, 1, value ? 1 : 0);
+  }
+
+  /** @return The left shift of a field of {@code width} bytes within its aligned int word. */
+  private static int shiftInWord(long fieldOffset, int width) {
+    int position = (int) (fieldOffset & 3);
+    return 8 * (BIG_ENDIAN ? 4 - width - position : position);
+  }
+
+  /**
+   * Replaces the {@code width} bytes at {@code fieldOffset} with the low bytes of {@code value} by
+   * rewriting the aligned int word that contains them, in native byte order.
+   */
+  private static void putSubWord(Object objectBeingBuilt, long fieldOffset, int width,
+      int value) {
+    long wordOffset = fieldOffset & ~3L;
+    int shift = shiftInWord(fieldOffset, width);
+    int mask = ((1 << (8 * width)) - 1) << shift;
+    int oldValue = UNSAFE.getInt(objectBeingBuilt, wordOffset);
+    UNSAFE.putInt(objectBeingBuilt, wordOffset, (oldValue & ~mask) | ((value << shift) & mask));
+  }
+
+  /** @return The {@code width} bytes at {@code fieldOffset}, zero-extended. */
+  private static int getSubWord(Object sourceObject, long fieldOffset, int width) {
+    int word = UNSAFE.getInt(sourceObject, fieldOffset & ~3L);
+    return (word >>> shiftInWord(fieldOffset, width)) & ((1 << (8 * width)) - 1);
   }
 
   @Override
-  protected Object getDouble(Object sourceObject, long fieldOffset) {
+  protected double getDouble(Object sourceObject, long fieldOffset) {
     return Double.longBitsToDouble(UNSAFE.getLong(sourceObject, fieldOffset));
   }
 
   @Override
-  protected Object getFloat(Object sourceObject, long fieldOffset) {
+  protected float getFloat(Object sourceObject, long fieldOffset) {
     return Float.intBitsToFloat(UNSAFE.getInt(sourceObject, fieldOffset));
   }
 
   @Override
-  protected Object getChar(Object sourceObject, long fieldOffset) {
-    // TODO Auto-generated method stub
-    return (char) (UNSAFE.getInt(sourceObject, fieldOffset - 2) & 0x0000FFFF);
+  protected char getChar(Object sourceObject, long fieldOffset) {
+    return (char) getSubWord(sourceObject, fieldOffset, 2);
   }
 
   @Override
-  protected Object getShort(Object sourceObject, long fieldOffset) {
-    // TODO Auto-generated method stub
-    return (short) (UNSAFE.getInt(sourceObject, fieldOffset - 2) & 0x0000FFFF);
+  protected short getShort(Object sourceObject, long fieldOffset) {
+    return (short) getSubWord(sourceObject, fieldOffset, 2);
   }
 
   @Override
-  protected Object getByte(Object sourceObject, long fieldOffset) {
-    // TODO Auto-generated method stub
-    return (byte) (UNSAFE.getInt(sourceObject, fieldOffset - 3) & 0x000000FF);
+  protected byte getByte(Object sourceObject, long fieldOffset) {
+    return (byte) getSubWord(sourceObject, fieldOffset, 1);
   }
 
   @Override
-  protected Object getBoolean(Object sourceObject, long fieldOffset) {
-    // TODO Auto-generated method stub
-    return (UNSAFE.getInt(sourceObject, fieldOffset - 3) & 0x000000FF) > 0;
+  protected boolean getBoolean(Object sourceObject, long fieldOffset) {
+    return getSubWord(sourceObject, fieldOffset, 1) != 0;
   }
 
 }
@@ -1,5 +1,9 @@
 package com.github.redstonevalley.util.reflect.builder.sun.oracle;
 
+import javax.annotation.Nullable;
+
+import com.github.redstonevalley.util.reflect.builder.ClassPlan;
+import com.github.redstonevalley.util.reflect.builder.ConcurrencyPolicy;
 import com.github.redstonevalley.util.reflect.builder.sun.SunMiscUnsafeBuilder;
 
 /**
@@ -17,6 +21,39 @@ public class OracleSunMiscUnsafeBuilder<T> extends SunMiscUnsafeBuilder<T> {
     super(clazz);
   }
 
+  public OracleSunMiscUnsafeBuilder(Class<T> clazz, ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, concurrencyPolicy);
+  }
+
+  /** @see SunMiscUnsafeBuilder#SunMiscUnsafeBuilder(Class, boolean, ConcurrencyPolicy) */
+  public OracleSunMiscUnsafeBuilder(Class<T> clazz, boolean allowsTypePunning,
+      ConcurrencyPolicy concurrencyPolicy) {
+    super(clazz, allowsTypePunning, concurrencyPolicy);
+  }
+
+  /**
+   * {@inheritDoc} Primitive ranges whose value is one byte repeated, such as zero or a {@code byte}
+   * or {@code boolean}, are filled with one {@link sun.misc.Unsafe#setMemory} call, addressed with
+   * the array's base offset and index scale.
+   */
+  @Override
+  protected void fillArrayRange(Object array, int from, int to, int kind, long bits,
+      @Nullable Object value) {
+    if (kind != ClassPlan.KIND_OBJECT) {
+      Class<?> arrayClass = array.getClass();
+      int scale = UNSAFE.arrayIndexScale(arrayClass);
+      long pattern = scale == 8 ? bits : bits & ((1L << (scale * 8)) - 1);
+      byte b = (byte) pattern;
+      long repeated = (b & 0xFFL) * 0x0101010101010101L;
+      if (scale == 8 ? pattern == repeated : pattern == (repeated & ((1L << (scale * 8)) - 1))) {
+        UNSAFE.setMemory(array, UNSAFE.arrayBaseOffset(arrayClass) + (long) from * scale,
+            (long) (to - from) * scale, b);
+        return;
+      }
+    }
+    super.fillArrayRange(array, from, to, kind, bits, value);
+  }
+
   @Override
   protected void putDouble(T objectBeingBuilt, long fieldOffset, double value) {
     UNSAFE.putDouble(objectBeingBuilt, fieldOffset, value);
@@ -48,32 +85,32 @@ public class OracleSunMiscUnsafeBuilder<T> extends SunMiscUnsafeBuilder<T> {
   }
 
   @Override
-  protected Object getDouble(Object sourceObject, long fieldOffset) {
+  protected double getDouble(Object sourceObject, long fieldOffset) {
     return UNSAFE.getDouble(sourceObject, fieldOffset);
   }
 
   @Override
-  protected Object getFloat(Object sourceObject, long fieldOffset) {
+  protected float getFloat(Object sourceObject, long fieldOffset) {
     return UNSAFE.getFloat(sourceObject, fieldOffset);
   }
 
   @Override
-  protected Object getChar(Object sourceObject, long fieldOffset) {
+  protected char getChar(Object sourceObject, long fieldOffset) {
     return UNSAFE.getChar(sourceObject, fieldOffset);
   }
 
   @Override
-  protected Object getShort(Object sourceObject, long fieldOffset) {
+  protected short getShort(Object sourceObject, long fieldOffset) {
     return UNSAFE.getShort(sourceObject, fieldOffset);
   }
 
   @Override
-  protected Object getByte(Object sourceObject, long fieldOffset) {
+  protected byte getByte(Object sourceObject, long fieldOffset) {
     return UNSAFE.getByte(sourceObject, fieldOffset);
   }
 
   @Override
-  protected Object getBoolean(Object sourceObject, long fieldOffset) {
+  protected boolean getBoolean(Object sourceObject, long fieldOffset) {
     return UNSAFE.getBoolean(sourceObject, fieldOffset);
   }
 